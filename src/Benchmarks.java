@@ -0,0 +1,71 @@
+import java.util.Random;
+
+
+/**
+ * Throughput of the main WAVLTree paths, reports the best of several runs in ns per operation.
+ * Run with a heap large enough for the tree, e.g. `java -Xmx2g Benchmarks`.
+ */
+public class Benchmarks {
+    private static final int SIZE = 1 << 20;
+    private static final int RUNS = 7;
+
+    private static long insertNanos = Long.MAX_VALUE;
+    private static long selectNanos = Long.MAX_VALUE;
+    private static long exportNanos = Long.MAX_VALUE;
+    private static long deleteNanos = Long.MAX_VALUE;
+    private static long checksum;
+
+    private static int[] shuffledKeys(Random random) {
+        int[] keys = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            keys[i] = i;
+        }
+        for (int i = SIZE; i > 1; i--) {
+            int j = random.nextInt(i);
+            int temp = keys[i - 1];
+            keys[i - 1] = keys[j];
+            keys[j] = temp;
+        }
+        return keys;
+    }
+
+    private static void run(int[] keys) {
+        WAVLTree tree = new WAVLTree();
+        long start = System.nanoTime();
+        for (int key : keys) {
+            checksum += tree.insert(key, "");
+        }
+        insertNanos = Math.min(insertNanos, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            checksum += tree.select(key + 1).length();
+        }
+        selectNanos = Math.min(selectNanos, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        checksum += tree.keysToArray()[SIZE - 1] + tree.infoToArray().length;
+        exportNanos = Math.min(exportNanos, System.nanoTime() - start);
+
+        start = System.nanoTime();
+        for (int key : keys) {
+            checksum += tree.delete(key);
+        }
+        deleteNanos = Math.min(deleteNanos, System.nanoTime() - start);
+    }
+
+    public static void main(String[] args) {
+        int[] keys = shuffledKeys(new Random(1));
+        for (int i = 0; i < RUNS; i++) {
+            run(keys);
+        }
+
+        System.out.println("Num of items: " + SIZE);
+        System.out.printf("Insert: %.1f ns/op%n", (double) insertNanos / SIZE);
+        System.out.printf("Select: %.1f ns/op%n", (double) selectNanos / SIZE);
+        System.out.printf("Keys and info export: %.1f ns/item%n", (double) exportNanos / SIZE);
+        System.out.printf("Delete: %.1f ns/op%n", (double) deleteNanos / SIZE);
+        System.out.println("Checksum: " + checksum);
+    }
+
+}
@@ -0,0 +1,292 @@
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * ConcurrentWAVLTree
+ * <p>
+ * A thread safe WAVL Tree for read-mostly workloads, one writer at a time and any number of readers.
+ * Writers take the write lock of a `StampedLock` around a plain `WAVLTree`.
+ * `search`, `select`, `min`, `max`, `size` and `empty` first run as optimistic reads without locking,
+ * and are retried under the read lock only if a writer held or took the lock while they ran.
+ * <p>
+ * An optimistic read may observe the tree in the middle of a rotation,
+ * so it walks the nodes with a bounded number of steps and treats any failure as a conflict.
+ * The wrapped tree never defers its sizes and never moves a finger,
+ * so a read does not write to the tree.
+ */
+public class ConcurrentWAVLTree {
+
+    /**
+     * The height of a WAVL tree is at most 2log(n), so a longer walk only happens when racing a writer
+     */
+    private static final int MAX_DEPTH = 2 * Integer.SIZE;
+    private static final int OPTIMISTIC_ATTEMPTS = 2;
+
+    private final StampedLock lock = new StampedLock();
+    private final WAVLTree tree = new WAVLTree();
+
+    /**
+     * public boolean empty()
+     * <p>
+     * returns true if and only if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean empty() {
+        return size() == 0;
+    }
+
+    /**
+     * public String search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * <p>
+     * Complexity O(logn)
+     */
+    public String search(int k) {
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                break;
+            }
+            try {
+                WAVLTree.WAVLNode node = this.tree.getRoot();
+                for (int depth = 0; node != null && node.isInnerNode() && depth < MAX_DEPTH; depth++) {
+                    if (k == node.getKey()) {
+                        String value = node.getValue();
+                        if (this.lock.validate(stamp)) {
+                            return value;
+                        }
+                        break;
+                    }
+                    node = k < node.getKey() ? node.getLeft() : node.getRight();
+                }
+                if ((node == null || !node.isInnerNode()) && this.lock.validate(stamp)) {
+                    return null;
+                }
+            } catch (RuntimeException e) {
+                // A torn read while racing a writer, retried below
+            }
+        }
+
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.search(k);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * <p>
+     * inserts an item with key k and info i to the WAVL tree under the write lock.
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity O(logn)
+     */
+    public int insert(int k, String i) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.tree.insert(k, i);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from the binary tree under the write lock, if it is there;
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity O(logn)
+     */
+    public int delete(int k) {
+        long stamp = this.lock.writeLock();
+        try {
+            return this.tree.delete(k);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * public String min()
+     * <p>
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public String min() {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                String value = this.tree.min();
+                if (this.lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // A torn read while racing a writer, retried below
+            }
+        }
+
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.min();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public String max()
+     * <p>
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public String max() {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                String value = this.tree.max();
+                if (this.lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // A torn read while racing a writer, retried below
+            }
+        }
+
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.max();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int size()
+     * <p>
+     * Returns the number of nodes in the tree.
+     * <p>
+     * Complexity O(1)
+     */
+    public int size() {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int size = this.tree.size();
+                if (this.lock.validate(stamp)) {
+                    return size;
+                }
+            } catch (RuntimeException e) {
+                // A torn read while racing a writer, retried below
+            }
+        }
+
+        stamp = this.lock.readLock();
+        try {
+            return this.tree.size();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public String select(int i)
+     * <p>
+     * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+     * <p>
+     * Complexity O(logn)
+     */
+    public String select(int i) {
+        if (i < 1) {
+            return null;
+        }
+        for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; attempt++) {
+            long stamp = this.lock.tryOptimisticRead();
+            if (stamp == 0) {
+                break;
+            }
+            try {
+                WAVLTree.WAVLNode node = this.tree.getRoot();
+                if (node == null || i > node.getSubtreeSize()) {
+                    if (this.lock.validate(stamp)) {
+                        return null;
+                    }
+                    continue;
+                }
+                int remaining = i;
+                for (int depth = 0; node.isInnerNode() && depth < MAX_DEPTH; depth++) {
+                    int leftSize = node.getLeft().getSubtreeSize();
+                    if (remaining - 1 == leftSize) {
+                        String value = node.getValue();
+                        if (this.lock.validate(stamp)) {
+                            return value;
+                        }
+                        break;
+                    } else if (remaining - 1 < leftSize) {
+                        node = node.getLeft();
+                    } else {
+                        remaining -= leftSize + 1;
+                        node = node.getRight();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // A torn read while racing a writer, retried below
+            }
+        }
+
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.select(i);
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Runs under the read lock.
+     * <p>
+     * Complexity O(n)
+     */
+    public int[] keysToArray() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.keysToArray();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Runs under the read lock.
+     * <p>
+     * Complexity O(n)
+     */
+    public String[] infoToArray() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.tree.infoToArray();
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+}
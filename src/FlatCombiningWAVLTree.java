@@ -0,0 +1,337 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FlatCombiningWAVLTree
+ * <p>
+ * A thread safe WAVL Tree for write heavy contention, built by flat combining.
+ * A thread publishes its insert or delete in its own slot, then either waits for the result
+ * or takes the combiner lock. The combiner collects every pending operation
+ * and applies them to the tree as one `applyBatch`, in key order, and hands back the results.
+ * So the tree is only touched by one thread at a time, which keeps it in that core's cache,
+ * and a thread that waits only spins on its own slot instead of on the lock.
+ * <p>
+ * Reads take the combiner lock, apply the pending operations first and then read the tree.
+ * <p>
+ * The combiner stamps every slot it finds pending with its pass number and unlinks slots
+ * that stayed idle for `MAX_IDLE_PASSES` passes, so the slots of threads that stopped using the tree
+ * (or died) are dropped and a pass only walks the recently active threads.
+ * A thread whose slot was unlinked links it again on its next operation.
+ */
+public class FlatCombiningWAVLTree {
+
+    private static final int EMPTY = 0;
+    private static final int PENDING = 1;
+    private static final int DONE = 2;
+
+    /**
+     * The most combining rounds one combiner runs before it lets another thread take over
+     */
+    private static final int MAX_ROUNDS = 4;
+
+    /**
+     * The number of combining passes a slot may stay idle before it is unlinked
+     */
+    private static final int MAX_IDLE_PASSES = 256;
+
+    private final WAVLTree tree = new WAVLTree();
+    private final ReentrantLock combinerLock = new ReentrantLock();
+    private final AtomicReference<Slot> slots = new AtomicReference<>();
+    private final ThreadLocal<Slot> threadSlot = ThreadLocal.withInitial(Slot::new);
+
+    /**
+     * Pending slots of the current round, only used by the combiner
+     */
+    private Slot[] batch = new Slot[16];
+    /**
+     * The number of combining passes so far, only used by the combiner
+     */
+    private int pass;
+
+    /**
+     * public int insert(int k, String i)
+     * <p>
+     * inserts an item with key k and info i to the WAVL tree.
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity O(logn) work, the wait depends on the other threads
+     */
+    public int insert(int k, String i) {
+        return apply(k, i, false);
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from the binary tree, if it is there;
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity O(logn) work, the wait depends on the other threads
+     */
+    public int delete(int k) {
+        return apply(k, null, true);
+    }
+
+    /**
+     * public String search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * <p>
+     * Complexity O(logn) after the pending operations
+     */
+    public String search(int k) {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.search(k);
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public String select(int i)
+     * <p>
+     * Returns the value of the i'th smallest key (return null if tree is empty)
+     * <p>
+     * Complexity O(logn) after the pending operations
+     */
+    public String select(int i) {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return i < 1 ? null : this.tree.select(i);
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public String min()
+     * <p>
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1) after the pending operations
+     */
+    public String min() {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.min();
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public String max()
+     * <p>
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1) after the pending operations
+     */
+    public String max() {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.max();
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public int size()
+     * <p>
+     * Returns the number of nodes in the tree.
+     * <p>
+     * Complexity O(1) after the pending operations
+     */
+    public int size() {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.size();
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n) after the pending operations
+     */
+    public int[] keysToArray() {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.keysToArray();
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n) after the pending operations
+     */
+    public String[] infoToArray() {
+        this.combinerLock.lock();
+        try {
+            combine();
+            return this.tree.infoToArray();
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * public int slotCount()
+     * <p>
+     * Returns the number of slots in the slot list, idle slots are unlinked by later combining passes
+     * <p>
+     * Complexity O(threads)
+     */
+    public int slotCount() {
+        this.combinerLock.lock();
+        try {
+            int count = 0;
+            for (Slot slot = this.slots.get(); slot != null; slot = slot.next) {
+                count++;
+            }
+            return count;
+        } finally {
+            this.combinerLock.unlock();
+        }
+    }
+
+    /**
+     * Publish an operation in the slot of the calling thread and wait until a combiner applied it
+     *
+     * @return The result of the operation
+     */
+    private int apply(int k, String i, boolean delete) {
+        Slot slot = this.threadSlot.get();
+        slot.key = k;
+        slot.info = i;
+        slot.delete = delete;
+        slot.state = PENDING;
+
+        while (slot.state != DONE) {
+            // A combiner may unlink the slot until it saw it pending, so check again while waiting
+            if (!slot.active) {
+                registerSlot(slot);
+            }
+            if (this.combinerLock.tryLock()) {
+                try {
+                    combine();
+                } finally {
+                    this.combinerLock.unlock();
+                }
+            } else {
+                Thread.yield();
+            }
+        }
+        slot.state = EMPTY;
+        return slot.result;
+    }
+
+    /**
+     * Apply the pending operations of all slots, in rounds while new ones keep coming.
+     * The combiner lock is held.
+     * <p>
+     * Complexity O(m log(m) + m log(n/m + 1)) for m pending operations, plus O(active threads) per round
+     */
+    private void combine() {
+        for (int round = 0; round < MAX_ROUNDS; round++) {
+            int count = 0;
+            this.pass++;
+            Slot head = this.slots.get();
+            Slot prev = null;
+            Slot next;
+            for (Slot slot = head; slot != null; slot = next) {
+                // Read before unlinking, the owner may link the slot again right after
+                next = slot.next;
+                if (slot.state == PENDING) {
+                    slot.lastPass = this.pass;
+                    if (count == this.batch.length) {
+                        this.batch = Arrays.copyOf(this.batch, 2 * count);
+                    }
+                    this.batch[count++] = slot;
+                } else if (slot != head && this.pass - slot.lastPass > MAX_IDLE_PASSES) {
+                    // Only the head is changed by threads linking slots, so any other slot can be unlinked here
+                    prev.next = next;
+                    slot.active = false;
+                    continue;
+                }
+                prev = slot;
+            }
+            if (count == 0) {
+                return;
+            }
+
+            int[] keys = new int[count];
+            String[] infos = new String[count];
+            boolean[] deletes = new boolean[count];
+            for (int j = 0; j < count; j++) {
+                keys[j] = this.batch[j].key;
+                infos[j] = this.batch[j].info;
+                deletes[j] = this.batch[j].delete;
+            }
+            int[] results = this.tree.applyBatch(keys, infos, deletes);
+            for (int j = 0; j < count; j++) {
+                Slot slot = this.batch[j];
+                this.batch[j] = null;
+                slot.result = results[j];
+                slot.state = DONE;
+            }
+        }
+    }
+
+    /**
+     * Link the unlinked slot of the calling thread to the front of the slot list
+     */
+    private void registerSlot(Slot slot) {
+        slot.active = true;
+        do {
+            slot.next = this.slots.get();
+        } while (!this.slots.compareAndSet(slot.next, slot));
+    }
+
+    /**
+     * The operation of one thread. The owner writes the operation and then the state,
+     * the combiner reads the state and then the operation, and the other way around for the result.
+     */
+    private static final class Slot {
+        private Slot next;
+        /**
+         * The last combining pass that found the slot pending, only used by the combiner
+         */
+        private int lastPass;
+        /**
+         * Whether the slot is in the slot list, cleared by the combiner when it unlinks the slot
+         */
+        private volatile boolean active;
+        private int key;
+        private String info;
+        private boolean delete;
+        private int result;
+        private volatile int state = EMPTY;
+    }
+
+}
@@ -0,0 +1,739 @@
+import java.util.Arrays;
+
+/**
+ * IndexedWAVLTree
+ * <p>
+ * The rebalancing core shared by the array backed WAVL Trees.
+ * A node is an index into parallel primitive arrays of ranks, subtree sizes and left/right/parent links,
+ * index 0 is the shared external node.
+ * Subclasses keep the keys and values of a node in their own arrays at the same index,
+ * locate nodes by key and call `linkNode` / `unlinkNode` to update the tree.
+ */
+public abstract class IndexedWAVLTree {
+
+    protected static final int EXTERNAL_NODE = 0;
+    protected static final int NO_NODE = -1;
+    protected static final int DEFAULT_CAPACITY = 16;
+
+    private int[] ranks;
+    private int[] sizes;
+    protected int[] lefts;
+    protected int[] rights;
+    private int[] parents;
+
+    protected int root;
+    protected int minNode;
+    protected int maxNode;
+    private int nextFree;
+    private int freeList;
+    private int actionsCount;
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    protected IndexedWAVLTree(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1) + 1;
+        this.ranks = new int[capacity];
+        this.sizes = new int[capacity];
+        this.lefts = new int[capacity];
+        this.rights = new int[capacity];
+        this.parents = new int[capacity];
+
+        this.ranks[EXTERNAL_NODE] = -1;
+        this.sizes[EXTERNAL_NODE] = 0;
+
+        this.root = NO_NODE;
+        this.minNode = NO_NODE;
+        this.maxNode = NO_NODE;
+        this.nextFree = 1;
+        this.freeList = NO_NODE;
+    }
+
+    /**
+     * Grow the key and value arrays of the subclass to `capacity` slots
+     * <p>
+     * Complexity O(capacity)
+     */
+    protected abstract void growStorage(int capacity);
+
+    /**
+     * Called when `node` is deleted, before its slot is reused
+     * <p>
+     * Complexity O(1)
+     */
+    protected void releaseNode(int node) {
+    }
+
+    /**
+     * public boolean empty()
+     * <p>
+     * returns true if and only if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean empty() {
+        return this.root == NO_NODE;
+    }
+
+    /**
+     * public int size()
+     * <p>
+     * Returns the number of nodes in the tree.
+     * <p>
+     * Complexity O(1)
+     */
+    public int size() {
+        return empty() ? 0 : sizes[this.root];
+    }
+
+    /**
+     * Take a slot from the free list, or from the end of the arrays growing them when full
+     * <p>
+     * Complexity Amortized O(1)
+     */
+    protected int newNode() {
+        int node;
+        if (this.freeList != NO_NODE) {
+            node = this.freeList;
+            this.freeList = rights[node];
+        } else {
+            if (this.nextFree == ranks.length) {
+                grow();
+            }
+            node = this.nextFree++;
+        }
+
+        ranks[node] = 0;
+        sizes[node] = 1;
+        lefts[node] = EXTERNAL_NODE;
+        rights[node] = EXTERNAL_NODE;
+        parents[node] = NO_NODE;
+        return node;
+    }
+
+    /**
+     * Link a new node under `closestNode`, or as the root if `closestNode` is `NO_NODE`
+     *
+     * @param asLeft true if the key of `newNode` is smaller than the key of `closestNode`
+     * @return the number of rebalancing operations
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    protected int linkNode(int closestNode, boolean asLeft, int newNode) {
+        this.actionsCount = 0;
+
+        if (closestNode == NO_NODE) {
+            setRoot(newNode);
+            this.maxNode = newNode;
+            this.minNode = newNode;
+            return 0;
+        }
+
+        if (asLeft) {
+            setLeft(closestNode, newNode);
+            if (closestNode == this.minNode) {
+                this.minNode = newNode;
+            }
+        } else {
+            setRight(closestNode, newNode);
+            if (closestNode == this.maxNode) {
+                this.maxNode = newNode;
+            }
+        }
+
+        insertBalanceTree(newNode);
+        updateSubTreeSizeUp(newNode);
+
+        return this.actionsCount;
+    }
+
+    /**
+     * Unlink `nodeToDelete` from the tree, rebalance and free its slot
+     *
+     * @return the number of rebalancing operations
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    protected int unlinkNode(int nodeToDelete) {
+        this.actionsCount = 0;
+
+        if (nodeToDelete == this.maxNode) {
+            this.maxNode = predecessor(nodeToDelete);
+        }
+        if (nodeToDelete == this.minNode) {
+            this.minNode = successor(nodeToDelete);
+        }
+
+        int result = deleteNode(nodeToDelete);
+
+        releaseNode(nodeToDelete);
+        rights[nodeToDelete] = this.freeList;
+        this.freeList = nodeToDelete;
+        return result;
+    }
+
+    /**
+     * Complexity W.C. O(logn)
+     */
+    private int deleteNode(int nodeToDelete) {
+        boolean notLeafOrUnary = !(isLeaf(nodeToDelete) || isUnary(nodeToDelete));
+        if (notLeafOrUnary) {
+            replaceWithSuccessor(nodeToDelete);
+        }
+
+        if (isLeaf(nodeToDelete)) {
+            if (this.root == nodeToDelete) {
+                setRoot(NO_NODE);
+                return 0;
+            }
+
+            int parent = parents[nodeToDelete];
+
+            if (getRightRankDiff(parent) == 1 && getLeftRankDiff(parent) == 1) {
+                removeLeaf(parent, nodeToDelete);
+                updateSubTreeSizeUp(parent);
+                return 0;
+            }
+
+            int otherChild = getOtherChild(parent, nodeToDelete);
+            if (otherChild == EXTERNAL_NODE) {
+                removeLeaf(parent, nodeToDelete);
+                setRank(parent, ranks[parent] - 1);
+                calculateSize(parent);
+
+                deleteBalanceTree(parents[parent]);
+
+                return this.actionsCount;
+            }
+
+            removeLeaf(parent, nodeToDelete);
+            deleteBalanceTree(parent);
+
+            return this.actionsCount;
+        }
+
+        // If reached here then `nodeToDelete` is unary
+        int child = rights[nodeToDelete] == EXTERNAL_NODE ? lefts[nodeToDelete] : rights[nodeToDelete];
+        int parent = parents[nodeToDelete];
+
+        if (this.root == nodeToDelete) {
+            setRoot(child);
+            return 0;
+        }
+
+        if (ranks[parent] - ranks[nodeToDelete] == 1) {
+            replaceUnaryNode(parent, nodeToDelete, child);
+            updateSubTreeSizeUp(parent);
+            return 0;
+        }
+
+        replaceUnaryNode(parent, nodeToDelete, child);
+        deleteBalanceTree(parent);
+        return this.actionsCount;
+    }
+
+    /**
+     * Complexity O(logn) - calls `successor`
+     */
+    private void replaceWithSuccessor(int nodeToDelete) {
+        int successor = successor(nodeToDelete);
+
+        int successorParent = parents[successor];
+        int successorChild = rights[successor] == EXTERNAL_NODE ? lefts[successor] : rights[successor];
+        if (isLeaf(successor)) {
+            replaceUnaryNode(successorParent, successor, EXTERNAL_NODE);
+        } else {
+            replaceUnaryNode(successorParent, successor, successorChild);
+        }
+
+        if (this.root == nodeToDelete) {
+            setRoot(successor);
+        } else {
+            replaceUnaryNode(parents[nodeToDelete], nodeToDelete, successor);
+        }
+
+        ranks[successor] = ranks[nodeToDelete];
+        setRight(successor, rights[nodeToDelete]);
+        setLeft(successor, lefts[nodeToDelete]);
+
+        if (successorChild != EXTERNAL_NODE) {
+            replaceUnaryNode(successorChild, EXTERNAL_NODE, nodeToDelete);
+            ranks[successorChild] = ranks[successorChild] + 1;
+        } else {
+            if (successorParent == nodeToDelete) {
+                replaceUnaryNode(successor, EXTERNAL_NODE, nodeToDelete);
+            } else {
+                replaceUnaryNode(successorParent, EXTERNAL_NODE, nodeToDelete);
+            }
+        }
+        setLeft(nodeToDelete, EXTERNAL_NODE);
+        setRight(nodeToDelete, EXTERNAL_NODE);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRoot(int node) {
+        this.root = node;
+        if (node != NO_NODE) {
+            parents[node] = NO_NODE;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void replaceUnaryNode(int parent, int nodeToRemove, int node) {
+        if (lefts[parent] == nodeToRemove) {
+            setLeft(parent, node);
+        } else {
+            setRight(parent, node);
+        }
+    }
+
+    /**
+     * Delete a leaf node
+     * Complexity O(1)
+     */
+    private void removeLeaf(int parent, int nodeToDelete) {
+        if (lefts[parent] == nodeToDelete) {
+            lefts[parent] = EXTERNAL_NODE;
+        } else {
+            rights[parent] = EXTERNAL_NODE;
+        }
+    }
+
+    /**
+     * @return A node of `parent` which is not `node`
+     * <p>
+     * Complexity O(1)
+     */
+    private int getOtherChild(int parent, int node) {
+        if (rights[parent] == node) {
+            return lefts[parent];
+        } else {
+            return rights[parent];
+        }
+    }
+
+    /**
+     * @return The node of the i'th smallest key, or `NO_NODE` if there is none
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    protected int selectNode(int i) {
+        if (i < 1 || i > size()) {
+            return NO_NODE;
+        }
+        int node;
+        if (i <= sizes[lefts[this.root]]) {
+            node = this.minNode;
+            while (sizes[node] < i) {
+                node = parents[node];
+            }
+        } else {
+            node = this.maxNode;
+            int treeSize = this.size();
+            while (i <= treeSize - sizes[node]) {
+                node = parents[node];
+            }
+            i = i - (treeSize - sizes[node]);
+        }
+
+        while (true) {
+            int r = sizes[lefts[node]];
+            if (i - 1 == r) {
+                return node;
+            } else if (i - 1 < r) {
+                node = lefts[node];
+            } else {
+                node = rights[node];
+                i = i - r - 1;
+            }
+        }
+    }
+
+    /**
+     * Balance tree after deleting a node
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void deleteBalanceTree(int node) {
+        if (isLegalState(node)) {
+            if (node != NO_NODE) {
+                updateSubTreeSizeUp(node);
+            }
+            return;
+        }
+
+        if (isSingleDemoteState(node)) {
+            setRank(node, ranks[node] - 1);
+            calculateSize(node);
+            deleteBalanceTree(parents[node]);
+            return;
+        }
+
+        int otherChild = getLeftRankDiff(node) == 3 ? rights[node] : lefts[node];
+        boolean isCase2 = getRightRankDiff(otherChild) == 2 && getLeftRankDiff(otherChild) == 2;
+        if (isCase2) {
+            setRank(otherChild, ranks[otherChild] - 1);
+            setRank(node, ranks[node] - 1);
+            deleteBalanceTree(parents[node]);
+
+            updateSubTreeSizeUp(node);
+            return;
+        }
+
+        if (rights[node] == otherChild) {
+            boolean isCase4 = (getRightRankDiff(otherChild) == 2);
+            if (isCase4) {
+                deleteDoubleRotate(node, otherChild);
+            } else {
+                // Case 3
+                deleteSingleRotate(node, otherChild);
+            }
+        } else {
+            boolean isCase4 = (getLeftRankDiff(otherChild) == 2);
+            if (isCase4) {
+                deleteDoubleRotate(node, otherChild);
+            } else {
+                // Case 3
+                deleteSingleRotate(node, otherChild);
+            }
+        }
+
+        updateSubTreeSizeUp(node);
+    }
+
+    /**
+     * Case 3 delete
+     * <p>
+     * Complexity O(1)
+     */
+    private void deleteSingleRotate(int node, int otherChild) {
+        singleRotate(node, otherChild);
+
+        setRank(otherChild, ranks[otherChild] + 1);
+
+        if (isLeaf(node) && getRightRankDiff(node) == 3 && getLeftRankDiff(node) == 3) {
+            setRank(node, ranks[node] - 2);
+        } else {
+            setRank(node, ranks[node] - 1);
+        }
+    }
+
+    /**
+     * Case 4 delete
+     * <p>
+     * Complexity O(1)
+     */
+    private void deleteDoubleRotate(int node, int otherChild) {
+        int grandChild = doubleRotate(node, otherChild);
+        setRank(node, ranks[node] - 2);
+        setRank(otherChild, ranks[otherChild] - 1);
+        setRank(grandChild, ranks[grandChild] + 2);
+    }
+
+    /**
+     * Balance the tree after inserting a node
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void insertBalanceTree(int node) {
+        while (true) {
+            boolean isLegalInsertState = this.root == node || ranks[node] < ranks[parents[node]];
+            if (isLegalInsertState) {
+                updateSubTreeSizeUp(node);
+                return;
+            }
+
+            int parent = parents[node];
+
+            boolean isPromoteState = Math.abs(getRightRankDiff(parent) - getLeftRankDiff(parent)) == 1;
+            if (!isPromoteState) {
+                insertRotate(parent, node);
+                return;
+            }
+
+            setRank(parent, ranks[parent] + 1);
+            node = parent;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isLegalState(int node) {
+        if (empty() || node == NO_NODE) {
+            return true;
+        }
+
+        int leftChildDiff = getLeftRankDiff(node);
+        int rightChildDiff = getRightRankDiff(node);
+
+        return leftChildDiff > 0 && rightChildDiff > 0 && leftChildDiff < 3 && rightChildDiff < 3;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isSingleDemoteState(int node) {
+        int leftChildDiff = getLeftRankDiff(node);
+        int rightChildDiff = getRightRankDiff(node);
+
+        return (leftChildDiff == 3 && rightChildDiff == 2) ||
+                (leftChildDiff == 2 && rightChildDiff == 3);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void insertRotate(int parent, int node) {
+        boolean isRightChild = rights[parent] == node;
+
+        if (isRightChild) {
+            if (getLeftRankDiff(node) == 2) {
+                insertSingleRotate(parent, node); // Case 2
+            } else {
+                insertDoubleRotate(parent, node); // Case 3
+            }
+        } else {
+            if (getRightRankDiff(node) == 2) {
+                insertSingleRotate(parent, node); // Case 2
+            } else {
+                insertDoubleRotate(parent, node); // Case 3
+            }
+        }
+    }
+
+    /**
+     * Case 3 insert
+     * <p>
+     * Complexity O(1)
+     */
+    private void insertDoubleRotate(int grandParent, int parent) {
+        int child = doubleRotate(grandParent, parent);
+
+        setRank(child, ranks[child] + 1);
+        setRank(parent, ranks[parent] - 1);
+        setRank(grandParent, ranks[grandParent] - 1);
+
+        updateSubTreeSizeUp(parent);
+    }
+
+    /**
+     * Case 2 insert
+     * <p>
+     * Complexity O(1)
+     */
+    private void insertSingleRotate(int parent, int node) {
+        singleRotate(parent, node);
+        setRank(parent, ranks[parent] - 1);
+
+        updateSubTreeSizeUp(node);
+    }
+
+    /**
+     * Single rotate the given nodes, rotate both right and left
+     * <p>
+     * Complexity O(1)
+     */
+    private void singleRotate(int parent, int node) {
+        this.actionsCount++;
+
+        int grandParent = parents[parent];
+        if (grandParent == NO_NODE) {
+            setRoot(node);
+        } else {
+            if (rights[grandParent] == parent) {
+                setRight(grandParent, node);
+            } else {
+                setLeft(grandParent, node);
+            }
+        }
+
+        int child;
+        if (rights[parent] == node) {
+            child = lefts[node];
+            setLeft(node, parent);
+            setRight(parent, child);
+        } else {
+            child = rights[node];
+            setRight(node, parent);
+            setLeft(parent, child);
+        }
+
+        calculateSize(parent);
+        calculateSize(node);
+    }
+
+    /**
+     * Double rotate the given nodes, rotate both right and left
+     *
+     * @param grandParent The parent node of the second rotation
+     * @param parent      The parent node of the first rotation
+     * @return the child
+     * <p>
+     * Complexity O(1)
+     */
+    private int doubleRotate(int grandParent, int parent) {
+        if (rights[grandParent] == parent) {
+            int child = lefts[parent];
+            singleRotate(parent, child);
+            singleRotate(grandParent, rights[grandParent]);
+            return child;
+        } else {
+            int child = rights[parent];
+            singleRotate(parent, child);
+            singleRotate(grandParent, lefts[grandParent]);
+            return child;
+        }
+    }
+
+    /**
+     * @return The successor of the node, or `NO_NODE` if it is the maximum
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    protected int successor(int node) {
+        if (maxNode == node) {
+            return NO_NODE;
+        }
+
+        if (rights[node] != EXTERNAL_NODE) {
+            node = rights[node];
+            while (lefts[node] != EXTERNAL_NODE) {
+                node = lefts[node];
+            }
+            return node;
+        }
+
+        while (parents[node] != NO_NODE && rights[parents[node]] == node) {
+            node = parents[node];
+        }
+        return parents[node];
+    }
+
+    /**
+     * @return The predecessor of the node, or `NO_NODE` if it is the minimum
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    protected int predecessor(int node) {
+        if (minNode == node) {
+            return NO_NODE;
+        }
+
+        if (lefts[node] != EXTERNAL_NODE) {
+            node = lefts[node];
+            while (rights[node] != EXTERNAL_NODE) {
+                node = rights[node];
+            }
+            return node;
+        }
+
+        while (parents[node] != NO_NODE && lefts[parents[node]] == node) {
+            node = parents[node];
+        }
+        return parents[node];
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRight(int node, int right) {
+        rights[node] = right;
+        if (right != EXTERNAL_NODE) {
+            parents[right] = node;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setLeft(int node, int left) {
+        lefts[node] = left;
+        if (left != EXTERNAL_NODE) {
+            parents[left] = node;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRank(int node, int rank) {
+        ranks[node] = rank;
+        this.actionsCount++;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private int getRightRankDiff(int node) {
+        return ranks[node] - ranks[rights[node]];
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private int getLeftRankDiff(int node) {
+        return ranks[node] - ranks[lefts[node]];
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isLeaf(int node) {
+        return lefts[node] == EXTERNAL_NODE && rights[node] == EXTERNAL_NODE;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isUnary(int node) {
+        return !isLeaf(node) && (lefts[node] == EXTERNAL_NODE || rights[node] == EXTERNAL_NODE);
+    }
+
+    /**
+     * Calculate the subtree size using the node's children
+     * <p>
+     * Complexity O(1)
+     */
+    private void calculateSize(int node) {
+        if (node != EXTERNAL_NODE) {
+            sizes[node] = sizes[rights[node]] + sizes[lefts[node]] + 1;
+        }
+    }
+
+    /**
+     * Call `calculateSize` from this node to the root
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void updateSubTreeSizeUp(int node) {
+        while (node != NO_NODE) {
+            calculateSize(node);
+            node = parents[node];
+        }
+    }
+
+    /**
+     * Complexity O(n)
+     */
+    private void grow() {
+        int capacity = ranks.length * 2;
+        ranks = Arrays.copyOf(ranks, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        lefts = Arrays.copyOf(lefts, capacity);
+        rights = Arrays.copyOf(rights, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        growStorage(capacity);
+    }
+
+}
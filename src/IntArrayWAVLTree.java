@@ -0,0 +1,40 @@
+/**
+ * IntArrayWAVLTree
+ * <p>
+ * A WAVL Tree whose nodes live in parallel primitive arrays instead of `WAVLNode` objects.
+ * A node is an index into the arrays, index 0 is the shared external node.
+ * Offers the same contract as `WAVLTree` and returns the same rebalancing counts.
+ */
+public class IntArrayWAVLTree extends IntObjectWAVLTree<String> {
+
+    /**
+     * Complexity O(1)
+     */
+    public IntArrayWAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    public IntArrayWAVLTree(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    @Override
+    public String[] infoToArray() {
+        return fillInfo(new String[this.size()]);
+    }
+
+}
@@ -0,0 +1,127 @@
+import java.util.Arrays;
+
+/**
+ * IntIntWAVLTree
+ * <p>
+ * A WAVL Tree from int keys to int values, kept in primitive arrays.
+ * Lookups take a caller supplied "missing" value instead of returning null, so they never allocate.
+ */
+public class IntIntWAVLTree extends IntKeyWAVLTree {
+
+    private int[] values;
+
+    /**
+     * Complexity O(1)
+     */
+    public IntIntWAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    public IntIntWAVLTree(int initialCapacity) {
+        super(initialCapacity);
+        this.values = new int[this.keys.length];
+    }
+
+    /**
+     * Complexity O(capacity)
+     */
+    @Override
+    protected void growStorage(int capacity) {
+        super.growStorage(capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    /**
+     * public int search(int k, int missing)
+     * <p>
+     * returns the value of an item with key k if it exists in the tree
+     * otherwise, returns `missing`
+     * <p>
+     * Complexity O(logn)
+     */
+    public int search(int k, int missing) {
+        int node = findNode(k);
+        return node == NO_NODE ? missing : values[node];
+    }
+
+    /**
+     * public int insert(int k, int v)
+     * <p>
+     * inserts an item with key k and value v to the WAVL tree.
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int insert(int k, int v) {
+        int closestNode = getClosestNode(k);
+        if (closestNode != NO_NODE && keys[closestNode] == k) {
+            return -1;
+        }
+
+        int newNode = newNode(k);
+        values[newNode] = v;
+        return linkNode(closestNode, closestNode != NO_NODE && k < keys[closestNode], newNode);
+    }
+
+    /**
+     * public int min(int missing)
+     * <p>
+     * Returns the value of the item with the smallest key in the tree,
+     * or `missing` if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public int min(int missing) {
+        return empty() ? missing : values[minNode];
+    }
+
+    /**
+     * public int max(int missing)
+     * <p>
+     * Returns the value of the item with the largest key in the tree,
+     * or `missing` if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public int max(int missing) {
+        return empty() ? missing : values[maxNode];
+    }
+
+    /**
+     * public int select(int i, int missing)
+     * <p>
+     * Returns the value of the i'th smallest key, or `missing` if there is none
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    public int select(int i, int missing) {
+        int node = selectNode(i);
+        return node == NO_NODE ? missing : values[node];
+    }
+
+    /**
+     * public int[] valuesToArray()
+     * <p>
+     * Returns an array which contains all values in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public int[] valuesToArray() {
+        int[] arr = new int[this.size()];
+        int index = 0;
+        for (int node = this.minNode; node != NO_NODE; node = successor(node)) {
+            arr[index++] = values[node];
+        }
+        return arr;
+    }
+
+}
@@ -0,0 +1,137 @@
+import java.util.Arrays;
+
+/**
+ * IntKeyWAVLTree
+ * <p>
+ * The int keyed part of the array backed WAVL Trees.
+ * Keeps the keys in an `int[]` next to the arrays of `IndexedWAVLTree`,
+ * subclasses add a value array of their own type.
+ */
+public abstract class IntKeyWAVLTree extends IndexedWAVLTree {
+
+    protected int[] keys;
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    protected IntKeyWAVLTree(int initialCapacity) {
+        super(initialCapacity);
+        this.keys = new int[this.lefts.length];
+    }
+
+    /**
+     * Complexity O(capacity)
+     */
+    @Override
+    protected void growStorage(int capacity) {
+        this.keys = Arrays.copyOf(this.keys, capacity);
+    }
+
+    /**
+     * public boolean contains(int k)
+     * <p>
+     * returns true if and only if an item with key k exists in the tree
+     * <p>
+     * Complexity O(logn)
+     */
+    public boolean contains(int k) {
+        return findNode(k) != NO_NODE;
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from the binary tree, if it is there;
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int delete(int k) {
+        int nodeToDelete = findNode(k);
+        if (nodeToDelete == NO_NODE) {
+            return -1;
+        }
+        return unlinkNode(nodeToDelete);
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[this.size()];
+        int index = 0;
+        for (int node = this.minNode; node != NO_NODE; node = successor(node)) {
+            arr[index++] = keys[node];
+        }
+        return arr;
+    }
+
+    /**
+     * @return A new node holding key k, its value is set by the caller
+     * <p>
+     * Complexity Amortized O(1)
+     */
+    protected int newNode(int k) {
+        int node = newNode();
+        keys[node] = k;
+        return node;
+    }
+
+    /**
+     * @return The node of key k, or `NO_NODE` if there is none
+     * <p>
+     * Complexity O(logn)
+     */
+    protected int findNode(int k) {
+        if (empty() || k < keys[minNode] || k > keys[maxNode]) {
+            return NO_NODE;
+        }
+
+        int closestNode = getClosestNode(k);
+        return keys[closestNode] == k ? closestNode : NO_NODE;
+    }
+
+    /**
+     * @return The location of the node or the location it should be inserted in,
+     * or `NO_NODE` if the tree is empty
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    protected int getClosestNode(int key) {
+        if (empty()) {
+            return NO_NODE;
+        }
+
+        if (key <= keys[minNode]) {
+            return minNode;
+        }
+        if (key >= keys[maxNode]) {
+            return maxNode;
+        }
+
+        int next = this.root;
+        while (true) {
+            int nextKey = keys[next];
+            if (nextKey == key) {
+                return next;
+            }
+
+            int child = key > nextKey ? rights[next] : lefts[next];
+            if (child == EXTERNAL_NODE) {
+                return next;
+            }
+            next = child;
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+import java.util.Arrays;
+
+/**
+ * IntObjectWAVLTree
+ * <p>
+ * A WAVL Tree from int keys to values of type V.
+ * The keys and the tree structure are kept in primitive arrays, only the values are objects.
+ */
+public class IntObjectWAVLTree<V> extends IntKeyWAVLTree {
+
+    private Object[] values;
+
+    /**
+     * Complexity O(1)
+     */
+    public IntObjectWAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    public IntObjectWAVLTree(int initialCapacity) {
+        super(initialCapacity);
+        this.values = new Object[this.keys.length];
+    }
+
+    /**
+     * Complexity O(capacity)
+     */
+    @Override
+    protected void growStorage(int capacity) {
+        super.growStorage(capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    @Override
+    protected void releaseNode(int node) {
+        values[node] = null;
+    }
+
+    /**
+     * public V search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * <p>
+     * Complexity O(logn)
+     */
+    public V search(int k) {
+        int node = findNode(k);
+        return node == NO_NODE ? null : value(node);
+    }
+
+    /**
+     * public int insert(int k, V i)
+     * <p>
+     * inserts an item with key k and info i to the WAVL tree.
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int insert(int k, V i) {
+        int closestNode = getClosestNode(k);
+        if (closestNode != NO_NODE && keys[closestNode] == k) {
+            return -1;
+        }
+
+        int newNode = newNode(k);
+        values[newNode] = i;
+        return linkNode(closestNode, closestNode != NO_NODE && k < keys[closestNode], newNode);
+    }
+
+    /**
+     * public V min()
+     * <p>
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public V min() {
+        return empty() ? null : value(minNode);
+    }
+
+    /**
+     * public V max()
+     * <p>
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public V max() {
+        return empty() ? null : value(maxNode);
+    }
+
+    /**
+     * public V select(int i)
+     * <p>
+     * Returns the value of the i'th smallest key (return null if tree is empty)
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    public V select(int i) {
+        int node = selectNode(i);
+        return node == NO_NODE ? null : value(node);
+    }
+
+    /**
+     * public Object[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public Object[] infoToArray() {
+        return fillInfo(new Object[this.size()]);
+    }
+
+    /**
+     * Fill `arr` with the info of the tree in key order
+     * <p>
+     * Complexity O(n)
+     */
+    protected <T> T[] fillInfo(T[] arr) {
+        int index = 0;
+        for (int node = this.minNode; node != NO_NODE; node = successor(node)) {
+            @SuppressWarnings("unchecked")
+            T value = (T) values[node];
+            arr[index++] = value;
+        }
+        return arr;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V value(int node) {
+        return (V) values[node];
+    }
+
+}
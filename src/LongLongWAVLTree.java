@@ -0,0 +1,223 @@
+import java.util.Arrays;
+
+/**
+ * LongLongWAVLTree
+ * <p>
+ * A WAVL Tree from long keys to long values, kept in primitive arrays.
+ * Lookups take a caller supplied "missing" value instead of returning null, so they never allocate.
+ */
+public class LongLongWAVLTree extends IndexedWAVLTree {
+
+    private long[] keys;
+    private long[] values;
+
+    /**
+     * Complexity O(1)
+     */
+    public LongLongWAVLTree() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity The number of nodes to allocate room for up front
+     *                        <p>
+     *                        Complexity O(initialCapacity)
+     */
+    public LongLongWAVLTree(int initialCapacity) {
+        super(initialCapacity);
+        this.keys = new long[this.lefts.length];
+        this.values = new long[this.lefts.length];
+    }
+
+    /**
+     * Complexity O(capacity)
+     */
+    @Override
+    protected void growStorage(int capacity) {
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.values = Arrays.copyOf(this.values, capacity);
+    }
+
+    /**
+     * public long search(long k, long missing)
+     * <p>
+     * returns the value of an item with key k if it exists in the tree
+     * otherwise, returns `missing`
+     * <p>
+     * Complexity O(logn)
+     */
+    public long search(long k, long missing) {
+        int node = findNode(k);
+        return node == NO_NODE ? missing : values[node];
+    }
+
+    /**
+     * public boolean contains(long k)
+     * <p>
+     * returns true if and only if an item with key k exists in the tree
+     * <p>
+     * Complexity O(logn)
+     */
+    public boolean contains(long k) {
+        return findNode(k) != NO_NODE;
+    }
+
+    /**
+     * public int insert(long k, long v)
+     * <p>
+     * inserts an item with key k and value v to the WAVL tree.
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int insert(long k, long v) {
+        int closestNode = getClosestNode(k);
+        if (closestNode != NO_NODE && keys[closestNode] == k) {
+            return -1;
+        }
+
+        int newNode = newNode();
+        keys[newNode] = k;
+        values[newNode] = v;
+        return linkNode(closestNode, closestNode != NO_NODE && k < keys[closestNode], newNode);
+    }
+
+    /**
+     * public int delete(long k)
+     * <p>
+     * deletes an item with key k from the binary tree, if it is there;
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int delete(long k) {
+        int nodeToDelete = findNode(k);
+        if (nodeToDelete == NO_NODE) {
+            return -1;
+        }
+        return unlinkNode(nodeToDelete);
+    }
+
+    /**
+     * public long min(long missing)
+     * <p>
+     * Returns the value of the item with the smallest key in the tree,
+     * or `missing` if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public long min(long missing) {
+        return empty() ? missing : values[minNode];
+    }
+
+    /**
+     * public long max(long missing)
+     * <p>
+     * Returns the value of the item with the largest key in the tree,
+     * or `missing` if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public long max(long missing) {
+        return empty() ? missing : values[maxNode];
+    }
+
+    /**
+     * public long select(int i, long missing)
+     * <p>
+     * Returns the value of the i'th smallest key, or `missing` if there is none
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    public long select(int i, long missing) {
+        int node = selectNode(i);
+        return node == NO_NODE ? missing : values[node];
+    }
+
+    /**
+     * public long[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public long[] keysToArray() {
+        long[] arr = new long[this.size()];
+        int index = 0;
+        for (int node = this.minNode; node != NO_NODE; node = successor(node)) {
+            arr[index++] = keys[node];
+        }
+        return arr;
+    }
+
+    /**
+     * public long[] valuesToArray()
+     * <p>
+     * Returns an array which contains all values in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public long[] valuesToArray() {
+        long[] arr = new long[this.size()];
+        int index = 0;
+        for (int node = this.minNode; node != NO_NODE; node = successor(node)) {
+            arr[index++] = values[node];
+        }
+        return arr;
+    }
+
+    /**
+     * @return The node of key k, or `NO_NODE` if there is none
+     * <p>
+     * Complexity O(logn)
+     */
+    private int findNode(long k) {
+        if (empty() || k < keys[minNode] || k > keys[maxNode]) {
+            return NO_NODE;
+        }
+
+        int closestNode = getClosestNode(k);
+        return keys[closestNode] == k ? closestNode : NO_NODE;
+    }
+
+    /**
+     * @return The location of the node or the location it should be inserted in,
+     * or `NO_NODE` if the tree is empty
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private int getClosestNode(long key) {
+        if (empty()) {
+            return NO_NODE;
+        }
+
+        if (key <= keys[minNode]) {
+            return minNode;
+        }
+        if (key >= keys[maxNode]) {
+            return maxNode;
+        }
+
+        int next = this.root;
+        while (true) {
+            long nextKey = keys[next];
+            if (nextKey == key) {
+                return next;
+            }
+
+            int child = key > nextKey ? rights[next] : lefts[next];
+            if (child == EXTERNAL_NODE) {
+                return next;
+            }
+            next = child;
+        }
+    }
+
+}
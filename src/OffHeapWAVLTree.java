@@ -0,0 +1,1051 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * OffHeapWAVLTree
+ * <p>
+ * A WAVL Tree whose node records live outside the Java heap, in chunks of direct memory.
+ * A node is a 64 bit slot number, slot 0 is the shared external node.
+ * Each slot is a fixed width record: key, rank, subtree size and left/right/parent slots.
+ * The value of a slot is kept on heap in a page table indexed by the same slot number.
+ * Sizes and slot numbers are 64 bit, so the tree may hold more than Integer.MAX_VALUE items.
+ * <p>
+ * The memory is held until `close` is called, which frees every chunk at once,
+ * after which the tree can not be used. On a JVM without `sun.misc.Unsafe.invokeCleaner`
+ * the chunks are only dropped and the memory is reclaimed at the next GC.
+ */
+public class OffHeapWAVLTree implements AutoCloseable {
+
+    private static final long EXTERNAL_NODE = 0;
+    private static final long NO_NODE = -1;
+
+    private static final int KEY_OFFSET = 0;
+    private static final int RANK_OFFSET = 4;
+    private static final int SIZE_OFFSET = 8;
+    private static final int LEFT_OFFSET = 16;
+    private static final int RIGHT_OFFSET = 24;
+    private static final int PARENT_OFFSET = 32;
+    private static final int RECORD_SIZE = 40;
+
+    private static final int CHUNK_SHIFT = 16;
+    private static final int SLOTS_PER_CHUNK = 1 << CHUNK_SHIFT;
+    private static final long SLOT_MASK = SLOTS_PER_CHUNK - 1;
+
+    /**
+     * `sun.misc.Unsafe` and its `invokeCleaner`, which frees a direct buffer at once,
+     * looked up by reflection so the class still loads on a JVM without them (then null)
+     */
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            unsafe = null;
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private ByteBuffer[] chunks;
+    private String[][] values;
+    private int chunkCount;
+
+    private long root;
+    private long minNode;
+    private long maxNode;
+    private long nextFree;
+    private long freeList;
+    private int actionsCount;
+
+    /**
+     * Complexity O(1)
+     */
+    public OffHeapWAVLTree() {
+        this.chunks = new ByteBuffer[4];
+        this.values = new String[4][];
+        this.chunkCount = 0;
+        addChunk();
+
+        setKey(EXTERNAL_NODE, -1);
+        setRankValue(EXTERNAL_NODE, -1);
+        setSize(EXTERNAL_NODE, 0);
+
+        this.root = NO_NODE;
+        this.minNode = NO_NODE;
+        this.maxNode = NO_NODE;
+        this.nextFree = 1;
+        this.freeList = NO_NODE;
+    }
+
+    /**
+     * Release the direct memory of the tree.
+     * Every chunk is freed at once by its buffer cleaner, or only dropped and reclaimed
+     * at the next GC if the JVM does not offer `invokeCleaner`. Closing again does nothing.
+     * <p>
+     * Complexity O(number of chunks)
+     */
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        ByteBuffer[] closedChunks = this.chunks;
+        int closedCount = this.chunkCount;
+        // Drop the chunks first, so the tree never reads a freed chunk
+        this.chunks = null;
+        this.values = null;
+        this.chunkCount = 0;
+        this.root = NO_NODE;
+        this.minNode = NO_NODE;
+        this.maxNode = NO_NODE;
+        for (int i = 0; i < closedCount; i++) {
+            freeChunk(closedChunks[i]);
+            closedChunks[i] = null;
+        }
+    }
+
+    /**
+     * Free the direct memory of `chunk` through `invokeCleaner`, if the JVM offers it
+     * <p>
+     * Complexity O(1)
+     */
+    private static void freeChunk(ByteBuffer chunk) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, chunk);
+        } catch (ReflectiveOperationException e) {
+            // Left to the GC like on a JVM without invokeCleaner
+        }
+    }
+
+    /**
+     * @return true if `close` was called
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isClosed() {
+        return this.chunks == null;
+    }
+
+    /**
+     * public boolean empty()
+     * <p>
+     * returns true if and only if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean empty() {
+        ensureOpen();
+        return this.root == NO_NODE;
+    }
+
+    /**
+     * public String search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * <p>
+     * Complexity O(logn)
+     */
+    public String search(int k) {
+        if (empty()) {
+            return null;
+        }
+
+        if (k < key(minNode) || k > key(maxNode)) {
+            return null;
+        }
+
+        long closestNode = getClosestNode(k);
+        if (key(closestNode) == k) {
+            return value(closestNode);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * <p>
+     * inserts an item with key k and info i to the WAVL tree.
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int insert(int k, String i) {
+        this.actionsCount = 0;
+
+        if (empty()) {
+            long newNode = newNode(k, i);
+            setRoot(newNode);
+            this.maxNode = newNode;
+            this.minNode = newNode;
+            return 0;
+        }
+
+        long closestNode = getClosestNode(k);
+        if (key(closestNode) == k) {
+            return -1;
+        }
+
+        long newNode = newNode(k, i);
+        if (key(closestNode) > k) {
+            setLeft(closestNode, newNode);
+        } else {
+            setRight(closestNode, newNode);
+        }
+
+        if (k > key(this.maxNode)) {
+            this.maxNode = newNode;
+        }
+        if (k < key(this.minNode)) {
+            this.minNode = newNode;
+        }
+        insertBalanceTree(newNode);
+        updateSubTreeSizeUp(newNode);
+
+        return this.actionsCount;
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from the binary tree, if it is there;
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    public int delete(int k) {
+        this.actionsCount = 0;
+        if (empty()) {
+            return -1;
+        }
+
+        long nodeToDelete = getClosestNode(k);
+        if (key(nodeToDelete) != k) {
+            return -1;
+        }
+
+        if (nodeToDelete == this.maxNode) {
+            this.maxNode = getPredecessor(nodeToDelete);
+        }
+        if (nodeToDelete == this.minNode) {
+            this.minNode = getSuccessor(nodeToDelete);
+        }
+
+        int result = deleteNode(nodeToDelete);
+        freeNode(nodeToDelete);
+        return result;
+    }
+
+    /**
+     * Unlink `nodeToDelete` from the tree and rebalance
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private int deleteNode(long nodeToDelete) {
+        boolean notLeafOrUnary = !(isLeaf(nodeToDelete) || isUnary(nodeToDelete));
+        if (notLeafOrUnary) {
+            replaceWithSuccessor(nodeToDelete);
+        }
+
+        if (isLeaf(nodeToDelete)) {
+            if (this.root == nodeToDelete) {
+                setRoot(NO_NODE);
+                return 0;
+            }
+
+            long parent = parent(nodeToDelete);
+
+            if (getRightRankDiff(parent) == 1 && getLeftRankDiff(parent) == 1) {
+                removeLeaf(parent, nodeToDelete);
+                updateSubTreeSizeUp(parent);
+                return 0;
+            }
+
+            long otherChild = getOtherChild(parent, nodeToDelete);
+            if (otherChild == EXTERNAL_NODE) {
+                removeLeaf(parent, nodeToDelete);
+                setRank(parent, rank(parent) - 1);
+                calculateSize(parent);
+
+                deleteBalanceTree(parent(parent));
+
+                return this.actionsCount;
+            }
+
+            removeLeaf(parent, nodeToDelete);
+            deleteBalanceTree(parent);
+
+            return this.actionsCount;
+        }
+
+        // If reached here then `nodeToDelete` is unary
+        long child = right(nodeToDelete) == EXTERNAL_NODE ? left(nodeToDelete) : right(nodeToDelete);
+        long parent = parent(nodeToDelete);
+
+        if (this.root == nodeToDelete) {
+            setRoot(child);
+            return 0;
+        }
+
+        if (rank(parent) - rank(nodeToDelete) == 1) {
+            replaceUnaryNode(parent, nodeToDelete, child);
+            updateSubTreeSizeUp(parent);
+            return 0;
+        }
+
+        replaceUnaryNode(parent, nodeToDelete, child);
+        deleteBalanceTree(parent);
+        return this.actionsCount;
+    }
+
+    /**
+     * Complexity O(logn) - calls `getSuccessor`
+     */
+    private void replaceWithSuccessor(long nodeToDelete) {
+        long successor = getSuccessor(nodeToDelete);
+
+        long successorParent = parent(successor);
+        long successorChild = right(successor) == EXTERNAL_NODE ? left(successor) : right(successor);
+        if (isLeaf(successor)) {
+            replaceUnaryNode(successorParent, successor, EXTERNAL_NODE);
+        } else {
+            replaceUnaryNode(successorParent, successor, successorChild);
+        }
+
+        if (this.root == nodeToDelete) {
+            setRoot(successor);
+        } else {
+            replaceUnaryNode(parent(nodeToDelete), nodeToDelete, successor);
+        }
+
+        setRankValue(successor, rank(nodeToDelete));
+        setRight(successor, right(nodeToDelete));
+        setLeft(successor, left(nodeToDelete));
+
+        if (successorChild != EXTERNAL_NODE) {
+            replaceUnaryNode(successorChild, EXTERNAL_NODE, nodeToDelete);
+            setRankValue(successorChild, rank(successorChild) + 1);
+        } else {
+            if (successorParent == nodeToDelete) {
+                replaceUnaryNode(successor, EXTERNAL_NODE, nodeToDelete);
+            } else {
+                replaceUnaryNode(successorParent, EXTERNAL_NODE, nodeToDelete);
+            }
+        }
+        setLeft(nodeToDelete, EXTERNAL_NODE);
+        setRight(nodeToDelete, EXTERNAL_NODE);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRoot(long node) {
+        this.root = node;
+        if (node != NO_NODE) {
+            setParent(node, NO_NODE);
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void replaceUnaryNode(long parent, long nodeToRemove, long node) {
+        if (left(parent) == nodeToRemove) {
+            setLeft(parent, node);
+        } else {
+            setRight(parent, node);
+        }
+    }
+
+    /**
+     * Delete a leaf node
+     * Complexity O(1)
+     */
+    private void removeLeaf(long parent, long nodeToDelete) {
+        if (left(parent) == nodeToDelete) {
+            setLeft(parent, EXTERNAL_NODE);
+        } else {
+            setRight(parent, EXTERNAL_NODE);
+        }
+    }
+
+    /**
+     * @return A node of `parent` which is not `node`
+     * <p>
+     * Complexity O(1)
+     */
+    private long getOtherChild(long parent, long node) {
+        if (right(parent) == node) {
+            return left(parent);
+        } else {
+            return right(parent);
+        }
+    }
+
+    /**
+     * public String min()
+     * <p>
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public String min() {
+        if (empty()) {
+            return null;
+        }
+        return value(this.minNode);
+    }
+
+    /**
+     * public String max()
+     * <p>
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public String max() {
+        if (empty()) {
+            return null;
+        }
+        return value(this.maxNode);
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * Throws IllegalStateException if the tree is too large for an array.
+     * <p>
+     * Complexity O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[arraySize()];
+        int index = 0;
+        for (long node = this.minNode; node != NO_NODE; node = getSuccessor(node)) {
+            arr[index++] = key(node);
+        }
+        return arr;
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * Throws IllegalStateException if the tree is too large for an array.
+     * <p>
+     * Complexity O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[arraySize()];
+        int index = 0;
+        for (long node = this.minNode; node != NO_NODE; node = getSuccessor(node)) {
+            arr[index++] = value(node);
+        }
+        return arr;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private int arraySize() {
+        long size = size();
+        if (size > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Tree of size " + size + " does not fit in an array");
+        }
+        return (int) size;
+    }
+
+    /**
+     * public long size()
+     * <p>
+     * Returns the number of nodes in the tree.
+     * <p>
+     * Complexity O(1)
+     */
+    public long size() {
+        return empty() ? 0 : size(this.root);
+    }
+
+    /**
+     * public String select(long i)
+     * <p>
+     * Returns the value of the i'th smallest key (return null if tree is empty)
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    public String select(long i) {
+        if (empty()) {
+            return null;
+        }
+
+        if (i < 1 || i > size()) {
+            return null;
+        }
+        long node;
+        if (i <= size(left(this.root))) {
+            node = this.minNode;
+            while (size(node) < i) {
+                node = parent(node);
+            }
+        } else {
+            node = this.maxNode;
+            long treeSize = this.size();
+            while (i <= treeSize - size(node)) {
+                node = parent(node);
+            }
+            i = i - (treeSize - size(node));
+        }
+
+        while (true) {
+            long r = size(left(node));
+            if (i - 1 == r) {
+                return value(node);
+            } else if (i - 1 < r) {
+                node = left(node);
+            } else {
+                node = right(node);
+                i = i - r - 1;
+            }
+        }
+    }
+
+    /**
+     * @return The location of the node or the location it should be inserted in
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private long getClosestNode(int key) {
+        if (key <= key(minNode)) {
+            return minNode;
+        }
+        if (key >= key(maxNode)) {
+            return maxNode;
+        }
+
+        long next = this.root;
+        while (true) {
+            int nextKey = key(next);
+            if (nextKey == key) {
+                return next;
+            }
+
+            long child = key > nextKey ? right(next) : left(next);
+            if (child == EXTERNAL_NODE) {
+                return next;
+            }
+            next = child;
+        }
+    }
+
+    /**
+     * Balance tree after deleting a node
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void deleteBalanceTree(long node) {
+        if (isLegalState(node)) {
+            if (node != NO_NODE) {
+                updateSubTreeSizeUp(node);
+            }
+            return;
+        }
+
+        if (isSingleDemoteState(node)) {
+            setRank(node, rank(node) - 1);
+            calculateSize(node);
+            deleteBalanceTree(parent(node));
+            return;
+        }
+
+        long otherChild = getLeftRankDiff(node) == 3 ? right(node) : left(node);
+        boolean isCase2 = getRightRankDiff(otherChild) == 2 && getLeftRankDiff(otherChild) == 2;
+        if (isCase2) {
+            setRank(otherChild, rank(otherChild) - 1);
+            setRank(node, rank(node) - 1);
+            deleteBalanceTree(parent(node));
+
+            updateSubTreeSizeUp(node);
+            return;
+        }
+
+        if (right(node) == otherChild) {
+            boolean isCase4 = (getRightRankDiff(otherChild) == 2);
+            if (isCase4) {
+                deleteDoubleRotate(node, otherChild);
+            } else {
+                // Case 3
+                deleteSingleRotate(node, otherChild);
+            }
+        } else {
+            boolean isCase4 = (getLeftRankDiff(otherChild) == 2);
+            if (isCase4) {
+                deleteDoubleRotate(node, otherChild);
+            } else {
+                // Case 3
+                deleteSingleRotate(node, otherChild);
+            }
+        }
+
+        updateSubTreeSizeUp(node);
+    }
+
+    /**
+     * Case 3 delete
+     * <p>
+     * Complexity O(1)
+     */
+    private void deleteSingleRotate(long node, long otherChild) {
+        singleRotate(node, otherChild);
+
+        setRank(otherChild, rank(otherChild) + 1);
+
+        if (isLeaf(node) && getRightRankDiff(node) == 3 && getLeftRankDiff(node) == 3) {
+            setRank(node, rank(node) - 2);
+        } else {
+            setRank(node, rank(node) - 1);
+        }
+    }
+
+    /**
+     * Case 4 delete
+     * <p>
+     * Complexity O(1)
+     */
+    private void deleteDoubleRotate(long node, long otherChild) {
+        long grandChild = doubleRotate(node, otherChild);
+        setRank(node, rank(node) - 2);
+        setRank(otherChild, rank(otherChild) - 1);
+        setRank(grandChild, rank(grandChild) + 2);
+    }
+
+    /**
+     * Balance the tree after inserting a node
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void insertBalanceTree(long node) {
+        while (true) {
+            boolean isLegalInsertState = this.root == node || rank(node) < rank(parent(node));
+            if (isLegalInsertState) {
+                updateSubTreeSizeUp(node);
+                return;
+            }
+
+            long parent = parent(node);
+
+            boolean isPromoteState = Math.abs(getRightRankDiff(parent) - getLeftRankDiff(parent)) == 1;
+            if (!isPromoteState) {
+                insertRotate(parent, node);
+                return;
+            }
+
+            setRank(parent, rank(parent) + 1);
+            node = parent;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isLegalState(long node) {
+        if (empty() || node == NO_NODE) {
+            return true;
+        }
+
+        int leftChildDiff = getLeftRankDiff(node);
+        int rightChildDiff = getRightRankDiff(node);
+
+        return leftChildDiff > 0 && rightChildDiff > 0 && leftChildDiff < 3 && rightChildDiff < 3;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isSingleDemoteState(long node) {
+        int leftChildDiff = getLeftRankDiff(node);
+        int rightChildDiff = getRightRankDiff(node);
+
+        return (leftChildDiff == 3 && rightChildDiff == 2) ||
+                (leftChildDiff == 2 && rightChildDiff == 3);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void insertRotate(long parent, long node) {
+        boolean isRightChild = right(parent) == node;
+
+        if (isRightChild) {
+            if (getLeftRankDiff(node) == 2) {
+                insertSingleRotate(parent, node); // Case 2
+            } else {
+                insertDoubleRotate(parent, node); // Case 3
+            }
+        } else {
+            if (getRightRankDiff(node) == 2) {
+                insertSingleRotate(parent, node); // Case 2
+            } else {
+                insertDoubleRotate(parent, node); // Case 3
+            }
+        }
+    }
+
+    /**
+     * Case 3 insert
+     * <p>
+     * Complexity O(1)
+     */
+    private void insertDoubleRotate(long grandParent, long parent) {
+        long child = doubleRotate(grandParent, parent);
+
+        setRank(child, rank(child) + 1);
+        setRank(parent, rank(parent) - 1);
+        setRank(grandParent, rank(grandParent) - 1);
+
+        updateSubTreeSizeUp(parent);
+    }
+
+    /**
+     * Case 2 insert
+     * <p>
+     * Complexity O(1)
+     */
+    private void insertSingleRotate(long parent, long node) {
+        singleRotate(parent, node);
+        setRank(parent, rank(parent) - 1);
+
+        updateSubTreeSizeUp(node);
+    }
+
+    /**
+     * Single rotate the given nodes, rotate both right and left
+     * <p>
+     * Complexity O(1)
+     */
+    private void singleRotate(long parent, long node) {
+        this.actionsCount++;
+
+        long grandParent = parent(parent);
+        if (grandParent == NO_NODE) {
+            setRoot(node);
+        } else {
+            if (right(grandParent) == parent) {
+                setRight(grandParent, node);
+            } else {
+                setLeft(grandParent, node);
+            }
+        }
+
+        long child;
+        if (right(parent) == node) {
+            child = left(node);
+            setLeft(node, parent);
+            setRight(parent, child);
+        } else {
+            child = right(node);
+            setRight(node, parent);
+            setLeft(parent, child);
+        }
+
+        calculateSize(parent);
+        calculateSize(node);
+    }
+
+    /**
+     * Double rotate the given nodes, rotate both right and left
+     *
+     * @param grandParent The parent node of the second rotation
+     * @param parent      The parent node of the first rotation
+     * @return the child
+     * <p>
+     * Complexity O(1)
+     */
+    private long doubleRotate(long grandParent, long parent) {
+        if (right(grandParent) == parent) {
+            long child = left(parent);
+            singleRotate(parent, child);
+            singleRotate(grandParent, right(grandParent));
+            return child;
+        } else {
+            long child = right(parent);
+            singleRotate(parent, child);
+            singleRotate(grandParent, left(grandParent));
+            return child;
+        }
+    }
+
+    /**
+     * @return The successor of the node, or `NO_NODE` if it is the maximum
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private long getSuccessor(long node) {
+        if (maxNode == node) {
+            return NO_NODE;
+        }
+
+        if (right(node) != EXTERNAL_NODE) {
+            node = right(node);
+            while (left(node) != EXTERNAL_NODE) {
+                node = left(node);
+            }
+            return node;
+        }
+
+        while (parent(node) != NO_NODE && right(parent(node)) == node) {
+            node = parent(node);
+        }
+        return parent(node);
+    }
+
+    /**
+     * @return The predecessor of the node, or `NO_NODE` if it is the minimum
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private long getPredecessor(long node) {
+        if (minNode == node) {
+            return NO_NODE;
+        }
+
+        if (left(node) != EXTERNAL_NODE) {
+            node = left(node);
+            while (right(node) != EXTERNAL_NODE) {
+                node = right(node);
+            }
+            return node;
+        }
+
+        while (parent(node) != NO_NODE && left(parent(node)) == node) {
+            node = parent(node);
+        }
+        return parent(node);
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private int getRightRankDiff(long node) {
+        return rank(node) - rank(right(node));
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private int getLeftRankDiff(long node) {
+        return rank(node) - rank(left(node));
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isLeaf(long node) {
+        return left(node) == EXTERNAL_NODE && right(node) == EXTERNAL_NODE;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private boolean isUnary(long node) {
+        return !isLeaf(node) && (left(node) == EXTERNAL_NODE || right(node) == EXTERNAL_NODE);
+    }
+
+    /**
+     * Calculate the subtree size using the node's children
+     * <p>
+     * Complexity O(1)
+     */
+    private void calculateSize(long node) {
+        if (node != EXTERNAL_NODE) {
+            setSize(node, size(right(node)) + size(left(node)) + 1);
+        }
+    }
+
+    /**
+     * Call `calculateSize` from this node to the root
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void updateSubTreeSizeUp(long node) {
+        while (node != NO_NODE) {
+            calculateSize(node);
+            node = parent(node);
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRight(long node, long right) {
+        setLink(node, RIGHT_OFFSET, right);
+        if (right != EXTERNAL_NODE) {
+            setParent(right, node);
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setLeft(long node, long left) {
+        setLink(node, LEFT_OFFSET, left);
+        if (left != EXTERNAL_NODE) {
+            setParent(left, node);
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void setRank(long node, int rank) {
+        setRankValue(node, rank);
+        this.actionsCount++;
+    }
+
+    /**
+     * Take a slot from the free list, or from the end of the last chunk adding a chunk when full
+     * <p>
+     * Complexity Amortized O(1)
+     */
+    private long newNode(int key, String value) {
+        long node;
+        if (this.freeList != NO_NODE) {
+            node = this.freeList;
+            this.freeList = right(node);
+        } else {
+            if (this.nextFree == (long) this.chunkCount << CHUNK_SHIFT) {
+                addChunk();
+            }
+            node = this.nextFree++;
+        }
+
+        setKey(node, key);
+        setRankValue(node, 0);
+        setSize(node, 1);
+        setLink(node, LEFT_OFFSET, EXTERNAL_NODE);
+        setLink(node, RIGHT_OFFSET, EXTERNAL_NODE);
+        setParent(node, NO_NODE);
+        values[(int) (node >>> CHUNK_SHIFT)][(int) (node & SLOT_MASK)] = value;
+        return node;
+    }
+
+    /**
+     * Return a deleted slot to the free list, chained through the right link
+     * <p>
+     * Complexity O(1)
+     */
+    private void freeNode(long node) {
+        values[(int) (node >>> CHUNK_SHIFT)][(int) (node & SLOT_MASK)] = null;
+        setLink(node, RIGHT_OFFSET, this.freeList);
+        this.freeList = node;
+    }
+
+    /**
+     * Complexity O(number of chunks)
+     */
+    private void addChunk() {
+        if (this.chunkCount == this.chunks.length) {
+            this.chunks = Arrays.copyOf(this.chunks, this.chunkCount * 2);
+            this.values = Arrays.copyOf(this.values, this.chunkCount * 2);
+        }
+        this.chunks[this.chunkCount] = ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        this.values[this.chunkCount] = new String[SLOTS_PER_CHUNK];
+        this.chunkCount++;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void ensureOpen() {
+        if (isClosed()) {
+            throw new IllegalStateException("Tree is closed");
+        }
+    }
+
+    // Record accessors, a slot number is split into a chunk index and a record offset
+
+    private ByteBuffer chunk(long node) {
+        return chunks[(int) (node >>> CHUNK_SHIFT)];
+    }
+
+    private int offset(long node) {
+        return (int) (node & SLOT_MASK) * RECORD_SIZE;
+    }
+
+    private int key(long node) {
+        return chunk(node).getInt(offset(node) + KEY_OFFSET);
+    }
+
+    private void setKey(long node, int key) {
+        chunk(node).putInt(offset(node) + KEY_OFFSET, key);
+    }
+
+    private int rank(long node) {
+        return chunk(node).getInt(offset(node) + RANK_OFFSET);
+    }
+
+    private void setRankValue(long node, int rank) {
+        chunk(node).putInt(offset(node) + RANK_OFFSET, rank);
+    }
+
+    private long size(long node) {
+        return chunk(node).getLong(offset(node) + SIZE_OFFSET);
+    }
+
+    private void setSize(long node, long size) {
+        chunk(node).putLong(offset(node) + SIZE_OFFSET, size);
+    }
+
+    private long left(long node) {
+        return chunk(node).getLong(offset(node) + LEFT_OFFSET);
+    }
+
+    private long right(long node) {
+        return chunk(node).getLong(offset(node) + RIGHT_OFFSET);
+    }
+
+    private long parent(long node) {
+        return chunk(node).getLong(offset(node) + PARENT_OFFSET);
+    }
+
+    private void setParent(long node, long parent) {
+        chunk(node).putLong(offset(node) + PARENT_OFFSET, parent);
+    }
+
+    private void setLink(long node, int linkOffset, long target) {
+        chunk(node).putLong(offset(node) + linkOffset, target);
+    }
+
+    private String value(long node) {
+        return values[(int) (node >>> CHUNK_SHIFT)][(int) (node & SLOT_MASK)];
+    }
+
+}
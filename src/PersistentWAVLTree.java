@@ -0,0 +1,672 @@
+/**
+ * PersistentWAVLTree
+ * <p>
+ * A WAVL Tree with O(1) immutable snapshots, made by path copying.
+ * Nodes have no parent links, so a node can be shared by many versions of the tree,
+ * and an update walks down with an explicit path instead.
+ * Every node is stamped with the epoch it was created in, and `snapshot` starts a new epoch.
+ * An update copies the nodes of older epochs it has to change (the search path and the rotated nodes),
+ * while nodes created since the last snapshot are changed in place.
+ * A snapshot is therefore never changed, may be read by any number of threads without locking,
+ * and its nodes are reclaimed by the GC once neither the tree nor a snapshot reaches them.
+ * <p>
+ * The tree itself, like `WAVLTree`, is for a single thread,
+ * it offers the same contract and returns the same rebalancing counts.
+ */
+public class PersistentWAVLTree {
+
+    private static final Node EXTERNAL_NODE = new Node(-1, "OUT_NODE", -1);
+
+    static {
+        EXTERNAL_NODE.rank = -1;
+        EXTERNAL_NODE.size = 0;
+        EXTERNAL_NODE.left = EXTERNAL_NODE;
+        EXTERNAL_NODE.right = EXTERNAL_NODE;
+    }
+
+    private Node root;
+    private int epoch;
+    private int actionsCount;
+
+    /**
+     * Complexity O(1)
+     */
+    public PersistentWAVLTree() {
+        this.root = null;
+        this.epoch = 0;
+    }
+
+    /**
+     * public Snapshot snapshot()
+     * <p>
+     * Returns an immutable view of the tree as it is now.
+     * Later updates of the tree copy the nodes they share with the snapshot instead of changing them.
+     * <p>
+     * Complexity O(1)
+     */
+    public Snapshot snapshot() {
+        this.epoch++;
+        return new Snapshot(this.root);
+    }
+
+    /**
+     * public boolean empty()
+     * <p>
+     * returns true if and only if the tree is empty
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean empty() {
+        return this.root == null;
+    }
+
+    /**
+     * public String search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the tree
+     * otherwise, returns null
+     * <p>
+     * Complexity O(logn)
+     */
+    public String search(int k) {
+        return search(this.root, k);
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * <p>
+     * inserts an item with key k and info i to the WAVL tree.
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were necessary.
+     * returns -1 if an item with key k already exists in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    public int insert(int k, String i) {
+        this.actionsCount = 0;
+        if (this.root == null) {
+            this.root = new Node(k, i, this.epoch);
+            return 0;
+        }
+
+        Node[] path = new Node[this.root.rank + 2];
+        int depth = 0;
+        Node node = this.root;
+        while (node != EXTERNAL_NODE) {
+            if (k == node.key) {
+                return -1;
+            }
+            path[depth++] = node;
+            node = k < node.key ? node.left : node.right;
+        }
+
+        copyPath(path, depth, k);
+        Node parent = path[depth - 1];
+        Node newNode = new Node(k, i, this.epoch);
+        if (k < parent.key) {
+            parent.left = newNode;
+        } else {
+            parent.right = newNode;
+        }
+        for (int d = 0; d < depth; d++) {
+            path[d].size++;
+        }
+        path[depth] = newNode;
+
+        insertBalanceTree(path, depth);
+        return this.actionsCount;
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from the binary tree, if it is there;
+     * the tree must remain valid (keep its invariants).
+     * returns the number of rebalancing operations, or 0 if no rebalancing operations were needed.
+     * returns -1 if an item with key k was not found in the tree.
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    public int delete(int k) {
+        this.actionsCount = 0;
+        if (this.root == null) {
+            return -1;
+        }
+
+        Node[] path = new Node[this.root.rank + 1];
+        int depth = 0;
+        Node node = this.root;
+        while (node != EXTERNAL_NODE && node.key != k) {
+            path[depth++] = node;
+            node = k < node.key ? node.left : node.right;
+        }
+        if (node == EXTERNAL_NODE) {
+            return -1;
+        }
+        path[depth++] = node;
+        copyPath(path, depth, k);
+
+        // A binary node takes the item of its successor, whose node is removed instead
+        Node target = path[depth - 1];
+        if (target.left != EXTERNAL_NODE && target.right != EXTERNAL_NODE) {
+            Node successor = writableChild(target, true);
+            path[depth++] = successor;
+            while (successor.left != EXTERNAL_NODE) {
+                successor = writableChild(successor, false);
+                path[depth++] = successor;
+            }
+            target.key = successor.key;
+            target.value = successor.value;
+            target = successor;
+            if (target.right != EXTERNAL_NODE) {
+                // WAVLTree moves the deleted node below the successor's child and counts its demotion
+                this.actionsCount++;
+            }
+        }
+        for (int d = 0; d < depth - 1; d++) {
+            path[d].size--;
+        }
+
+        int t = depth - 1;
+        if (target.left == EXTERNAL_NODE && target.right == EXTERNAL_NODE) {
+            if (t == 0) {
+                this.root = null;
+                return 0;
+            }
+
+            Node parent = path[t - 1];
+            boolean bothOne = parent.rank - parent.left.rank == 1 && parent.rank - parent.right.rank == 1;
+            replaceChild(parent, target, EXTERNAL_NODE);
+            if (bothOne) {
+                return this.actionsCount;
+            }
+            if (parent.left == EXTERNAL_NODE && parent.right == EXTERNAL_NODE) {
+                setRank(parent, parent.rank - 1);
+                deleteBalanceTree(path, t - 2);
+            } else {
+                deleteBalanceTree(path, t - 1);
+            }
+            return this.actionsCount;
+        }
+
+        // If reached here then `target` is unary
+        Node child = target.left == EXTERNAL_NODE ? target.right : target.left;
+        if (t == 0) {
+            this.root = child;
+            return 0;
+        }
+        replaceChild(path[t - 1], target, child);
+        deleteBalanceTree(path, t - 1);
+        return this.actionsCount;
+    }
+
+    /**
+     * public String min()
+     * <p>
+     * Returns the info of the item with the smallest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(logn)
+     */
+    public String min() {
+        return min(this.root);
+    }
+
+    /**
+     * public String max()
+     * <p>
+     * Returns the info of the item with the largest key in the tree,
+     * or null if the tree is empty
+     * <p>
+     * Complexity O(logn)
+     */
+    public String max() {
+        return max(this.root);
+    }
+
+    /**
+     * public int size()
+     * <p>
+     * Returns the number of nodes in the tree.
+     * <p>
+     * Complexity O(1)
+     */
+    public int size() {
+        return this.root == null ? 0 : this.root.size;
+    }
+
+    /**
+     * public String select(int i)
+     * <p>
+     * Returns the value of the i'th smallest key (return null if tree is empty or i is out of range)
+     * <p>
+     * Complexity O(logn)
+     */
+    public String select(int i) {
+        return select(this.root, i);
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the tree,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public int[] keysToArray() {
+        int[] arr = new int[size()];
+        inOrderEntries(this.root, arr, null);
+        return arr;
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the tree,
+     * sorted by their respective keys,
+     * or an empty array if the tree is empty.
+     * <p>
+     * Complexity O(n)
+     */
+    public String[] infoToArray() {
+        String[] arr = new String[size()];
+        inOrderEntries(this.root, null, arr);
+        return arr;
+    }
+
+    /**
+     * Replace the first `depth` nodes of the search path of `key` by nodes of the current epoch
+     * <p>
+     * Complexity O(depth)
+     */
+    private void copyPath(Node[] path, int depth, int key) {
+        this.root = writable(this.root);
+        path[0] = this.root;
+        for (int d = 1; d < depth; d++) {
+            path[d] = writableChild(path[d - 1], key > path[d - 1].key);
+        }
+    }
+
+    /**
+     * @return `node` if it was created in the current epoch, otherwise a copy of it from the current epoch
+     * <p>
+     * Complexity O(1)
+     */
+    private Node writable(Node node) {
+        if (node.epoch == this.epoch || node == EXTERNAL_NODE) {
+            return node;
+        }
+        Node copy = new Node(node.key, node.value, this.epoch);
+        copy.rank = node.rank;
+        copy.size = node.size;
+        copy.left = node.left;
+        copy.right = node.right;
+        return copy;
+    }
+
+    /**
+     * Make the right or left child of the writable `parent` writable, and link it to `parent`
+     *
+     * @return The writable child
+     * <p>
+     * Complexity O(1)
+     */
+    private Node writableChild(Node parent, boolean right) {
+        if (right) {
+            parent.right = writable(parent.right);
+            return parent.right;
+        }
+        parent.left = writable(parent.left);
+        return parent.left;
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void replaceChild(Node parent, Node child, Node node) {
+        if (parent.left == child) {
+            parent.left = node;
+        } else {
+            parent.right = node;
+        }
+    }
+
+    /**
+     * Balance the tree after inserting path[depth], promotions move the problem up the path
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void insertBalanceTree(Node[] path, int depth) {
+        while (depth > 0) {
+            Node node = path[depth];
+            Node parent = path[depth - 1];
+            if (node.rank < parent.rank) {
+                return;
+            }
+
+            boolean isPromoteState = Math.abs((parent.rank - parent.right.rank) - (parent.rank - parent.left.rank)) == 1;
+            if (!isPromoteState) {
+                Node grandParent = depth > 1 ? path[depth - 2] : null;
+                insertRotate(grandParent, parent, node);
+                return;
+            }
+
+            setRank(parent, parent.rank + 1);
+            depth--;
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private void insertRotate(Node grandParent, Node parent, Node node) {
+        boolean isRightChild = parent.right == node;
+        int innerRankDiff = isRightChild ? node.rank - node.left.rank : node.rank - node.right.rank;
+        if (innerRankDiff == 2) {
+            // Case 2
+            rotate(grandParent, parent, node);
+            setRank(parent, parent.rank - 1);
+        } else {
+            // Case 3
+            Node child = doubleRotate(grandParent, parent, node);
+            setRank(child, child.rank + 1);
+            setRank(node, node.rank - 1);
+            setRank(parent, parent.rank - 1);
+        }
+    }
+
+    /**
+     * Balance the tree after a deletion below path[depth], demotions move the problem up the path
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void deleteBalanceTree(Node[] path, int depth) {
+        while (depth >= 0) {
+            Node node = path[depth];
+            int leftDiff = node.rank - node.left.rank;
+            int rightDiff = node.rank - node.right.rank;
+            if (leftDiff > 0 && rightDiff > 0 && leftDiff < 3 && rightDiff < 3) {
+                return;
+            }
+
+            if ((leftDiff == 3 && rightDiff == 2) || (leftDiff == 2 && rightDiff == 3)) {
+                setRank(node, node.rank - 1);
+                depth--;
+                continue;
+            }
+
+            boolean otherIsRight = leftDiff == 3;
+            Node otherChild = writableChild(node, otherIsRight);
+            boolean isCase2 = otherChild.rank - otherChild.right.rank == 2 && otherChild.rank - otherChild.left.rank == 2;
+            if (isCase2) {
+                setRank(otherChild, otherChild.rank - 1);
+                setRank(node, node.rank - 1);
+                depth--;
+                continue;
+            }
+
+            Node grandParent = depth > 0 ? path[depth - 1] : null;
+            int outerRankDiff = otherIsRight ? otherChild.rank - otherChild.right.rank : otherChild.rank - otherChild.left.rank;
+            if (outerRankDiff == 2) {
+                // Case 4
+                Node grandChild = doubleRotate(grandParent, node, otherChild);
+                setRank(node, node.rank - 2);
+                setRank(otherChild, otherChild.rank - 1);
+                setRank(grandChild, grandChild.rank + 2);
+            } else {
+                // Case 3
+                rotate(grandParent, node, otherChild);
+                setRank(otherChild, otherChild.rank + 1);
+                boolean isLeaf = node.left == EXTERNAL_NODE && node.right == EXTERNAL_NODE;
+                if (isLeaf && node.rank - node.left.rank == 3 && node.rank - node.right.rank == 3) {
+                    setRank(node, node.rank - 2);
+                } else {
+                    setRank(node, node.rank - 1);
+                }
+            }
+            return;
+        }
+    }
+
+    /**
+     * Rotate the writable `node` above its writable parent `parent`, `grandParent` is null at the root
+     * <p>
+     * Complexity O(1)
+     */
+    private void rotate(Node grandParent, Node parent, Node node) {
+        this.actionsCount++;
+        if (grandParent == null) {
+            this.root = node;
+        } else {
+            replaceChild(grandParent, parent, node);
+        }
+
+        if (parent.right == node) {
+            parent.right = node.left;
+            node.left = parent;
+        } else {
+            parent.left = node.right;
+            node.right = parent;
+        }
+        parent.size = parent.left.size + parent.right.size + 1;
+        node.size = parent.size + (node.left == parent ? node.right.size : node.left.size) + 1;
+    }
+
+    /**
+     * Rotate the inner child of `node` above `node` and then above `parent`
+     *
+     * @return The inner child, now in the place of `parent`
+     * <p>
+     * Complexity O(1)
+     */
+    private Node doubleRotate(Node grandParent, Node parent, Node node) {
+        Node child = writableChild(node, parent.left == node);
+        rotate(parent, node, child);
+        rotate(grandParent, parent, child);
+        return child;
+    }
+
+    /**
+     * Set the rank of `node`, counted as a rebalancing operation
+     * <p>
+     * Complexity O(1)
+     */
+    private void setRank(Node node, int rank) {
+        node.rank = rank;
+        this.actionsCount++;
+    }
+
+    /**
+     * Complexity O(logn)
+     */
+    private static String search(Node node, int k) {
+        if (node == null) {
+            return null;
+        }
+        while (node != EXTERNAL_NODE) {
+            if (k == node.key) {
+                return node.value;
+            }
+            node = k < node.key ? node.left : node.right;
+        }
+        return null;
+    }
+
+    /**
+     * Complexity O(logn)
+     */
+    private static String min(Node node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.left != EXTERNAL_NODE) {
+            node = node.left;
+        }
+        return node.value;
+    }
+
+    /**
+     * Complexity O(logn)
+     */
+    private static String max(Node node) {
+        if (node == null) {
+            return null;
+        }
+        while (node.right != EXTERNAL_NODE) {
+            node = node.right;
+        }
+        return node.value;
+    }
+
+    /**
+     * Complexity O(logn)
+     */
+    private static String select(Node node, int i) {
+        if (node == null || i < 1 || i > node.size) {
+            return null;
+        }
+        while (true) {
+            int r = node.left.size;
+            if (i - 1 == r) {
+                return node.value;
+            } else if (i - 1 < r) {
+                node = node.left;
+            } else {
+                i -= r + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    /**
+     * Copy the tree of `node` in order into the arrays that are not null,
+     * using an explicit stack of the nodes whose left subtree is being copied. WAVL height <= rank.
+     * <p>
+     * Complexity O(n)
+     */
+    private static void inOrderEntries(Node node, int[] keys, String[] values) {
+        if (node == null) {
+            return;
+        }
+        Node[] stack = new Node[node.rank + 1];
+        int depth = 0;
+        int index = 0;
+        while (true) {
+            while (node != EXTERNAL_NODE) {
+                stack[depth++] = node;
+                node = node.left;
+            }
+            if (depth == 0) {
+                return;
+            }
+
+            node = stack[--depth];
+            if (keys != null) {
+                keys[index] = node.key;
+            }
+            if (values != null) {
+                values[index] = node.value;
+            }
+            index++;
+            node = node.right;
+        }
+    }
+
+    /**
+     * public class Snapshot
+     * <p>
+     * An immutable version of a PersistentWAVLTree, safe to read from any thread.
+     */
+    public static final class Snapshot {
+        private final Node root;
+
+        private Snapshot(Node root) {
+            this.root = root;
+        }
+
+        /**
+         * Complexity O(1)
+         */
+        public boolean empty() {
+            return this.root == null;
+        }
+
+        /**
+         * Complexity O(logn)
+         */
+        public String search(int k) {
+            return PersistentWAVLTree.search(this.root, k);
+        }
+
+        /**
+         * Complexity O(logn)
+         */
+        public String min() {
+            return PersistentWAVLTree.min(this.root);
+        }
+
+        /**
+         * Complexity O(logn)
+         */
+        public String max() {
+            return PersistentWAVLTree.max(this.root);
+        }
+
+        /**
+         * Complexity O(1)
+         */
+        public int size() {
+            return this.root == null ? 0 : this.root.size;
+        }
+
+        /**
+         * Complexity O(logn)
+         */
+        public String select(int i) {
+            return PersistentWAVLTree.select(this.root, i);
+        }
+
+        /**
+         * Complexity O(n)
+         */
+        public int[] keysToArray() {
+            int[] arr = new int[size()];
+            inOrderEntries(this.root, arr, null);
+            return arr;
+        }
+
+        /**
+         * Complexity O(n)
+         */
+        public String[] infoToArray() {
+            String[] arr = new String[size()];
+            inOrderEntries(this.root, null, arr);
+            return arr;
+        }
+    }
+
+    /**
+     * A node of some versions of the tree, only changed while it belongs to the current epoch
+     */
+    private static final class Node {
+        private int key;
+        private String value;
+        private int rank;
+        private int size;
+        private Node left;
+        private Node right;
+        private final int epoch;
+
+        private Node(int key, String value, int epoch) {
+            this.key = key;
+            this.value = value;
+            this.rank = 0;
+            this.size = 1;
+            this.left = EXTERNAL_NODE;
+            this.right = EXTERNAL_NODE;
+            this.epoch = epoch;
+        }
+    }
+
+}
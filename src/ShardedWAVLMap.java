@@ -0,0 +1,535 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ShardedWAVLMap
+ * <p>
+ * A thread safe map of int keys to String info, made of WAVL trees that each own a range of keys.
+ * Every shard has its own lock, so writers of different shards run in parallel.
+ * <p>
+ * The shards and their lower bounds form an immutable layout that is replaced as a whole.
+ * A shard that grows past twice its fair share of the items is split at the key of its root
+ * and, when that makes too many shards, the smallest adjacent pair is joined.
+ * Shards that are split or joined are retired, so an operation that locked a retired shard
+ * retries on the current layout.
+ * <p>
+ * `size` is a running count and is only exact when no writer runs.
+ * `select`, `keysToArray` and `infoToArray` lock all shards in order and see a consistent map,
+ * `select` finds its shard by the prefix sums of the shard sizes.
+ */
+public class ShardedWAVLMap {
+
+    /**
+     * Shards smaller than this are never split
+     */
+    private static final int MIN_SPLIT_SIZE = 1 << 10;
+
+    private final int targetShards;
+    private final int maxShards;
+    private final LongAdder count = new LongAdder();
+    private final ReentrantLock resizeLock = new ReentrantLock();
+    private volatile Layout layout;
+
+    /**
+     * Complexity O(shards)
+     */
+    public ShardedWAVLMap() {
+        this(4 * Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param shards The number of shards the key space is divided into evenly at first, at least 1
+     *               <p>
+     *               Complexity O(shards)
+     */
+    public ShardedWAVLMap(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("Need at least one shard, got " + shards);
+        }
+        this.targetShards = shards;
+        this.maxShards = 2 * shards;
+
+        int[] lowerBounds = new int[shards];
+        Shard[] parts = new Shard[shards];
+        long width = (1L << 32) / shards;
+        for (int j = 0; j < shards; j++) {
+            lowerBounds[j] = (int) (Integer.MIN_VALUE + j * width);
+            parts[j] = new Shard(new WAVLTree(), MIN_SPLIT_SIZE);
+        }
+        this.layout = new Layout(lowerBounds, parts);
+    }
+
+    /**
+     * public boolean empty()
+     * <p>
+     * returns true if and only if the map is empty, while no writer runs
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean empty() {
+        return size() == 0;
+    }
+
+    /**
+     * public int size()
+     * <p>
+     * Returns the number of items, exact while no writer runs
+     * <p>
+     * Complexity O(threads)
+     */
+    public int size() {
+        return (int) this.count.sum();
+    }
+
+    /**
+     * public int shardCount()
+     * <p>
+     * Returns the current number of shards
+     * <p>
+     * Complexity O(1)
+     */
+    public int shardCount() {
+        return this.layout.shards.length;
+    }
+
+    /**
+     * public String search(int k)
+     * <p>
+     * returns the info of an item with key k if it exists in the map
+     * otherwise, returns null
+     * <p>
+     * Complexity O(log(shards) + logn)
+     */
+    public String search(int k) {
+        Shard shard = lockShard(k);
+        try {
+            return shard.tree.search(k);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * public int insert(int k, String i)
+     * <p>
+     * inserts an item with key k and info i into the shard of k.
+     * returns the number of rebalancing operations in that shard, or 0 if none were necessary.
+     * returns -1 if an item with key k already exists in the map.
+     * May split the shard afterwards if it became too large.
+     * <p>
+     * Complexity O(log(shards) + logn) amortized
+     */
+    public int insert(int k, String i) {
+        Shard shard = lockShard(k);
+        int actions;
+        boolean tooLarge;
+        try {
+            actions = shard.tree.insert(k, i);
+            if (actions == -1) {
+                return -1;
+            }
+            this.count.increment();
+            shard.size++;
+            tooLarge = shard.size > shard.splitThreshold;
+        } finally {
+            shard.lock.unlock();
+        }
+
+        if (tooLarge) {
+            splitIfLarge(shard);
+        }
+        return actions;
+    }
+
+    /**
+     * public int delete(int k)
+     * <p>
+     * deletes an item with key k from its shard, if it is there;
+     * returns the number of rebalancing operations in that shard, or 0 if none were needed.
+     * returns -1 if an item with key k was not found in the map.
+     * <p>
+     * Complexity O(log(shards) + logn)
+     */
+    public int delete(int k) {
+        Shard shard = lockShard(k);
+        try {
+            int actions = shard.tree.delete(k);
+            if (actions != -1) {
+                this.count.decrement();
+                shard.size--;
+            }
+            return actions;
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * public String min()
+     * <p>
+     * Returns the info of the item with the smallest key in the map,
+     * or null if the map is empty. Checks the shards one at a time.
+     * <p>
+     * Complexity O(shards)
+     */
+    public String min() {
+        while (true) {
+            Shard[] shards = this.layout.shards;
+            boolean retired = false;
+            for (int j = 0; j < shards.length && !retired; j++) {
+                Shard shard = shards[j];
+                shard.lock.lock();
+                try {
+                    retired = shard.retired;
+                    if (!retired && !shard.tree.empty()) {
+                        return shard.tree.min();
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            if (!retired) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * public String max()
+     * <p>
+     * Returns the info of the item with the largest key in the map,
+     * or null if the map is empty. Checks the shards one at a time.
+     * <p>
+     * Complexity O(shards)
+     */
+    public String max() {
+        while (true) {
+            Shard[] shards = this.layout.shards;
+            boolean retired = false;
+            for (int j = shards.length - 1; j >= 0 && !retired; j--) {
+                Shard shard = shards[j];
+                shard.lock.lock();
+                try {
+                    retired = shard.retired;
+                    if (!retired && !shard.tree.empty()) {
+                        return shard.tree.max();
+                    }
+                } finally {
+                    shard.lock.unlock();
+                }
+            }
+            if (!retired) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * public String select(int i)
+     * <p>
+     * Returns the value of the i'th smallest key in the map (null if i is out of range).
+     * Locks all shards, sums their sizes and selects within the shard of the i'th key.
+     * <p>
+     * Complexity O(shards + logn)
+     */
+    public String select(int i) {
+        Shard[] shards = lockAll();
+        try {
+            int[] prefixSums = new int[shards.length + 1];
+            for (int j = 0; j < shards.length; j++) {
+                prefixSums[j + 1] = prefixSums[j] + shards[j].tree.size();
+            }
+            if (i < 1 || i > prefixSums[shards.length]) {
+                return null;
+            }
+
+            // The first shard whose prefix sum reaches i
+            int j = Arrays.binarySearch(prefixSums, i);
+            if (j < 0) {
+                j = -j - 1;
+            } else {
+                while (prefixSums[j - 1] == i) {
+                    j--;
+                }
+            }
+            return shards[j - 1].tree.select(i - prefixSums[j - 1]);
+        } finally {
+            unlockAll(shards);
+        }
+    }
+
+    /**
+     * public int[] keysToArray()
+     * <p>
+     * Returns a sorted array which contains all keys in the map,
+     * or an empty array if the map is empty.
+     * <p>
+     * Complexity O(shards + n)
+     */
+    public int[] keysToArray() {
+        Shard[] shards = lockAll();
+        try {
+            int size = 0;
+            for (Shard shard : shards) {
+                size += shard.tree.size();
+            }
+            int[] arr = new int[size];
+            int offset = 0;
+            for (Shard shard : shards) {
+                int[] keys = shard.tree.keysToArray();
+                System.arraycopy(keys, 0, arr, offset, keys.length);
+                offset += keys.length;
+            }
+            return arr;
+        } finally {
+            unlockAll(shards);
+        }
+    }
+
+    /**
+     * public String[] infoToArray()
+     * <p>
+     * Returns an array which contains all info in the map,
+     * sorted by their respective keys,
+     * or an empty array if the map is empty.
+     * <p>
+     * Complexity O(shards + n)
+     */
+    public String[] infoToArray() {
+        Shard[] shards = lockAll();
+        try {
+            int size = 0;
+            for (Shard shard : shards) {
+                size += shard.tree.size();
+            }
+            String[] arr = new String[size];
+            int offset = 0;
+            for (Shard shard : shards) {
+                String[] infos = shard.tree.infoToArray();
+                System.arraycopy(infos, 0, arr, offset, infos.length);
+                offset += infos.length;
+            }
+            return arr;
+        } finally {
+            unlockAll(shards);
+        }
+    }
+
+    /**
+     * @return The locked, live shard of key k
+     * <p>
+     * Complexity O(log(shards)) unless racing a resize
+     */
+    private Shard lockShard(int k) {
+        while (true) {
+            Shard shard = this.layout.shardOf(k);
+            shard.lock.lock();
+            if (!shard.retired) {
+                return shard;
+            }
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Lock every shard of the current layout in order
+     *
+     * @return The locked shards, none of them retired
+     * <p>
+     * Complexity O(shards) unless racing a resize
+     */
+    private Shard[] lockAll() {
+        while (true) {
+            Shard[] shards = this.layout.shards;
+            int locked = 0;
+            while (locked < shards.length) {
+                shards[locked].lock.lock();
+                if (shards[locked].retired) {
+                    break;
+                }
+                locked++;
+            }
+            if (locked == shards.length) {
+                return shards;
+            }
+            // Unlock the retired shard too
+            unlockAll(Arrays.copyOf(shards, locked + 1));
+        }
+    }
+
+    /**
+     * Complexity O(shards)
+     */
+    private static void unlockAll(Shard[] shards) {
+        for (Shard shard : shards) {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Split `shard` at its root key if it still holds more than twice its fair share,
+     * otherwise raise its threshold to twice the current fair share
+     * <p>
+     * Complexity O(shards + logn)
+     */
+    private void splitIfLarge(Shard shard) {
+        this.resizeLock.lock();
+        try {
+            Layout current = this.layout;
+            int index = current.indexOf(shard);
+            if (index < 0) {
+                return;
+            }
+
+            int fairShare = Math.max(MIN_SPLIT_SIZE, (int) (this.count.sum() / this.targetShards));
+            shard.lock.lock();
+            try {
+                if (shard.size <= 2 * fairShare) {
+                    shard.splitThreshold = 2 * fairShare;
+                    return;
+                }
+
+                int splitKey = shard.tree.getRoot().getKey();
+                WAVLTree larger = shard.tree.split(splitKey);
+                shard.retired = true;
+                this.layout = current.withSplit(index, splitKey,
+                        new Shard(shard.tree, 2 * fairShare), new Shard(larger, 2 * fairShare));
+            } finally {
+                shard.lock.unlock();
+            }
+
+            if (this.layout.shards.length > this.maxShards) {
+                joinSmallestPair();
+            }
+        } finally {
+            this.resizeLock.unlock();
+        }
+    }
+
+    /**
+     * Join the two adjacent shards with the fewest items between them, the resize lock is held
+     * <p>
+     * Complexity O(shards + logn)
+     */
+    private void joinSmallestPair() {
+        Layout current = this.layout;
+        Shard[] shards = current.shards;
+        int best = 0;
+        int bestSize = Integer.MAX_VALUE;
+        for (int j = 0; j + 1 < shards.length; j++) {
+            int size = shards[j].size + shards[j + 1].size;
+            if (size < bestSize) {
+                best = j;
+                bestSize = size;
+            }
+        }
+
+        Shard left = shards[best];
+        Shard right = shards[best + 1];
+        left.lock.lock();
+        right.lock.lock();
+        try {
+            WAVLTree joined = WAVLTree.join(left.tree, right.tree);
+            left.retired = true;
+            right.retired = true;
+            this.layout = current.withJoin(best, new Shard(joined, Math.max(left.splitThreshold, right.splitThreshold)));
+        } finally {
+            right.lock.unlock();
+            left.lock.unlock();
+        }
+    }
+
+    /**
+     * A tree with its lock, retired once its key range changes
+     */
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final WAVLTree tree;
+        private volatile boolean retired;
+        /**
+         * The size of the tree, written under the lock and read without it to pick shards to resize
+         */
+        private volatile int size;
+        /**
+         * The size past which the shard is checked for a split, written under the resize lock
+         */
+        private volatile int splitThreshold;
+
+        private Shard(WAVLTree tree, int splitThreshold) {
+            this.tree = tree;
+            this.size = tree.size();
+            this.splitThreshold = splitThreshold;
+        }
+    }
+
+    /**
+     * The shards in key order, shard j holds the keys from lowerBounds[j] up to lowerBounds[j + 1]
+     */
+    private static final class Layout {
+        private final int[] lowerBounds;
+        private final Shard[] shards;
+
+        private Layout(int[] lowerBounds, Shard[] shards) {
+            this.lowerBounds = lowerBounds;
+            this.shards = shards;
+        }
+
+        /**
+         * Complexity O(log(shards))
+         */
+        private Shard shardOf(int k) {
+            int j = Arrays.binarySearch(this.lowerBounds, k);
+            return this.shards[j >= 0 ? j : -j - 2];
+        }
+
+        /**
+         * Complexity O(shards)
+         */
+        private int indexOf(Shard shard) {
+            for (int j = 0; j < this.shards.length; j++) {
+                if (this.shards[j] == shard) {
+                    return j;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return This layout with shard `index` replaced by `smaller` and `larger`, which starts at `splitKey`
+         * <p>
+         * Complexity O(shards)
+         */
+        private Layout withSplit(int index, int splitKey, Shard smaller, Shard larger) {
+            int n = this.shards.length;
+            int[] bounds = new int[n + 1];
+            Shard[] parts = new Shard[n + 1];
+            System.arraycopy(this.lowerBounds, 0, bounds, 0, index + 1);
+            System.arraycopy(this.shards, 0, parts, 0, index);
+            System.arraycopy(this.lowerBounds, index + 1, bounds, index + 2, n - index - 1);
+            System.arraycopy(this.shards, index + 1, parts, index + 2, n - index - 1);
+            bounds[index + 1] = splitKey;
+            parts[index] = smaller;
+            parts[index + 1] = larger;
+            return new Layout(bounds, parts);
+        }
+
+        /**
+         * @return This layout with shards `index` and `index + 1` replaced by `joined`
+         * <p>
+         * Complexity O(shards)
+         */
+        private Layout withJoin(int index, Shard joined) {
+            int n = this.shards.length;
+            int[] bounds = new int[n - 1];
+            Shard[] parts = new Shard[n - 1];
+            System.arraycopy(this.lowerBounds, 0, bounds, 0, index + 1);
+            System.arraycopy(this.shards, 0, parts, 0, index);
+            System.arraycopy(this.lowerBounds, index + 2, bounds, index + 1, n - index - 2);
+            System.arraycopy(this.shards, index + 2, parts, index + 1, n - index - 2);
+            parts[index] = joined;
+            return new Layout(bounds, parts);
+        }
+    }
+
+}
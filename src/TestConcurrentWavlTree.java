@@ -0,0 +1,89 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestConcurrentWavlTree {
+
+    @Test
+    public void testSameResultsAsWAVLTree() {
+        WAVLTree expected = new WAVLTree();
+        ConcurrentWAVLTree tree = new ConcurrentWAVLTree();
+        Assert.assertTrue(tree.empty());
+        Assert.assertNull(tree.min());
+        Assert.assertNull(tree.select(1));
+        for (int i = 0; i < 3000; i++) {
+            int key = (i * 7919) % 811;
+            if (i % 3 == 2) {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            } else {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+            }
+            Assert.assertEquals(expected.search(key), tree.search(key));
+        }
+        Assert.assertEquals(expected.size(), tree.size());
+        Assert.assertEquals(expected.min(), tree.min());
+        Assert.assertEquals(expected.max(), tree.max());
+        for (int i = 1; i <= expected.size(); i++) {
+            Assert.assertEquals(expected.select(i), tree.select(i));
+        }
+        Assert.assertNull(tree.select(0));
+        Assert.assertNull(tree.select(expected.size() + 1));
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+    }
+
+    @Test
+    public void testReadersDuringWrites() throws InterruptedException {
+        ConcurrentWAVLTree tree = new ConcurrentWAVLTree();
+        int n = 1000;
+        // Even keys stay in the tree, odd keys come and go
+        for (int key = 0; key < 2 * n; key += 2) {
+            tree.insert(key, Integer.toString(key));
+        }
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            for (int round = 0; round < 20; round++) {
+                for (int key = 1; key < 2 * n; key += 2) {
+                    tree.insert(key, Integer.toString(key));
+                }
+                for (int key = 1; key < 2 * n; key += 2) {
+                    tree.delete(key);
+                }
+            }
+        });
+        Thread[] readers = new Thread[4];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(() -> {
+                try {
+                    while (writer.isAlive()) {
+                        for (int key = 0; key < 2 * n; key += 2) {
+                            Assert.assertEquals(Integer.toString(key), tree.search(key));
+                        }
+                        Assert.assertEquals("0", tree.min());
+                        Assert.assertEquals("0", tree.select(1));
+                        int size = tree.size();
+                        Assert.assertTrue(size >= n && size <= 2 * n);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+
+        writer.start();
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        writer.join();
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        Assert.assertEquals(n, tree.size());
+        Assert.assertEquals(Integer.toString(2 * n - 2), tree.max());
+    }
+}
@@ -0,0 +1,93 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestFlatCombiningWavlTree {
+
+    @Test
+    public void testSameResultsAsWAVLTree() {
+        WAVLTree expected = new WAVLTree();
+        FlatCombiningWAVLTree tree = new FlatCombiningWAVLTree();
+        Assert.assertNull(tree.min());
+        Assert.assertNull(tree.select(1));
+        for (int i = 0; i < 3000; i++) {
+            int key = (i * 7919) % 811;
+            if (i % 3 == 2) {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            } else {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+            }
+            Assert.assertEquals(expected.search(key), tree.search(key));
+        }
+        Assert.assertEquals(expected.size(), tree.size());
+        Assert.assertEquals(expected.min(), tree.min());
+        Assert.assertEquals(expected.max(), tree.max());
+        Assert.assertEquals(expected.select(expected.size()), tree.select(expected.size()));
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+    }
+
+    @Test
+    public void testConcurrentWriters() throws InterruptedException {
+        FlatCombiningWAVLTree tree = new FlatCombiningWAVLTree();
+        int perThread = 20000;
+        Thread[] writers = new Thread[4];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    for (int j = 0; j < perThread; j++) {
+                        Assert.assertTrue(tree.insert(j * writers.length + offset, "v") != -1);
+                        Assert.assertEquals(-1, tree.insert(j * writers.length + offset, "w"));
+                    }
+                    for (int j = 0; j < perThread; j += 2) {
+                        Assert.assertTrue(tree.delete(j * writers.length + offset) != -1);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        int[] keys = tree.keysToArray();
+        Assert.assertEquals(writers.length * perThread / 2, tree.size());
+        for (int j = 0; j < keys.length; j++) {
+            Assert.assertEquals((j / writers.length * 2 + 1) * writers.length + j % writers.length, keys[j]);
+        }
+        Assert.assertEquals("v", tree.search(keys[keys.length - 1]));
+    }
+
+    @Test
+    public void testSlotsOfFinishedThreadsAreDropped() throws InterruptedException {
+        FlatCombiningWAVLTree tree = new FlatCombiningWAVLTree();
+        int threads = 500;
+        for (int t = 0; t < threads; t++) {
+            int key = t;
+            Thread thread = new Thread(() -> {
+                tree.insert(key, "v");
+                tree.delete(key + threads);
+            });
+            thread.start();
+            thread.join();
+        }
+        Assert.assertTrue(tree.slotCount() < threads);
+
+        // Enough combining passes for every idle slot to age out
+        for (int j = 0; j < 1000; j++) {
+            tree.insert(threads + j, "w");
+        }
+        Assert.assertTrue(tree.slotCount() <= 2);
+        Assert.assertEquals(threads + 1000, tree.size());
+    }
+}
@@ -0,0 +1,67 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+public class TestIntArrayWavlTree {
+
+    @Test
+    public void testInsertSearch() {
+        IntArrayWAVLTree tree = new IntArrayWAVLTree();
+        tree.insert(1217, "a");
+        tree.insert(1716, "b");
+        tree.insert(1012, "c");
+        Assert.assertEquals(-1, tree.insert(1012, "d"));
+        Assert.assertEquals("a", tree.search(1217));
+        Assert.assertEquals(null, tree.search(1218));
+        Assert.assertArrayEquals(new int[]{1012, 1217, 1716}, tree.keysToArray());
+        Assert.assertArrayEquals(new String[]{"c", "a", "b"}, tree.infoToArray());
+        Assert.assertEquals("c", tree.min());
+        Assert.assertEquals("b", tree.max());
+    }
+
+    @Test
+    public void testDeleteToEmpty() {
+        IntArrayWAVLTree tree = new IntArrayWAVLTree();
+        tree.insert(1234, "a");
+        tree.insert(1466, "b");
+        tree.insert(1435, "c");
+        Assert.assertEquals(-1, tree.delete(1));
+        tree.delete(1234);
+        tree.delete(1435);
+        tree.delete(1466);
+        Assert.assertTrue(tree.empty());
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(null, tree.min());
+        Assert.assertEquals(0, tree.keysToArray().length);
+    }
+
+    @Test
+    public void testSelect() {
+        IntArrayWAVLTree tree = new IntArrayWAVLTree(1);
+        for (int i = 1; i < 100; i++) {
+            tree.insert(i, Integer.toString(i));
+        }
+        for (int i = 1; i < 100; i++) {
+            Assert.assertEquals(Integer.toString(i), tree.select(i));
+        }
+        Assert.assertEquals(null, tree.select(100));
+    }
+
+    @Test
+    public void testSameCountsAsWAVLTree() {
+        Random random = new Random(7);
+        WAVLTree expected = new WAVLTree();
+        IntArrayWAVLTree tree = new IntArrayWAVLTree();
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(500);
+            if (random.nextInt(3) > 0) {
+                Assert.assertEquals(expected.insert(key, ""), tree.insert(key, ""));
+            } else {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            }
+            Assert.assertEquals(expected.size(), tree.size());
+        }
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+    }
+}
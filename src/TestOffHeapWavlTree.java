@@ -0,0 +1,93 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+
+public class TestOffHeapWavlTree {
+
+    @Test
+    public void testInsertDeleteSearch() {
+        try (OffHeapWAVLTree tree = new OffHeapWAVLTree()) {
+            tree.insert(3090, "a");
+            tree.insert(242, "b");
+            tree.insert(5349, "c");
+            tree.insert(4780, "d");
+            Assert.assertEquals(-1, tree.insert(242, "e"));
+            tree.delete(242);
+            Assert.assertEquals(3, tree.size());
+            Assert.assertEquals(null, tree.search(242));
+            Assert.assertEquals("d", tree.search(4780));
+            Assert.assertArrayEquals(new int[]{3090, 4780, 5349}, tree.keysToArray());
+            Assert.assertArrayEquals(new String[]{"a", "d", "c"}, tree.infoToArray());
+        }
+    }
+
+    @Test
+    public void testManyChunks() {
+        try (OffHeapWAVLTree tree = new OffHeapWAVLTree()) {
+            int n = 200000;
+            for (int i = 0; i < n; i++) {
+                tree.insert(i, Integer.toString(i));
+            }
+            Assert.assertEquals(n, tree.size());
+            for (long i = 1; i <= n; i += 997) {
+                Assert.assertEquals(Long.toString(i - 1), tree.select(i));
+            }
+            for (int i = 0; i < n; i += 2) {
+                tree.delete(i);
+            }
+            Assert.assertEquals(n / 2, tree.size());
+            Assert.assertEquals("1", tree.min());
+            Assert.assertEquals(Integer.toString(n - 1), tree.max());
+        }
+    }
+
+    @Test
+    public void testSameCountsAsWAVLTree() {
+        WAVLTree expected = new WAVLTree();
+        try (OffHeapWAVLTree tree = new OffHeapWAVLTree()) {
+            for (int i = 0; i < 2000; i++) {
+                int key = (i * 7919) % 613;
+                if (i % 3 == 2) {
+                    Assert.assertEquals(expected.delete(key), tree.delete(key));
+                } else {
+                    Assert.assertEquals(expected.insert(key, ""), tree.insert(key, ""));
+                }
+            }
+            Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testClosed() {
+        OffHeapWAVLTree tree = new OffHeapWAVLTree();
+        tree.insert(1, "a");
+        tree.close();
+        tree.search(1);
+    }
+
+    private long directMemoryUsed() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void testCloseFreesDirectMemory() {
+        OffHeapWAVLTree tree = new OffHeapWAVLTree();
+        for (int k = 0; k < 200000; k++) {
+            tree.insert(k, "");
+        }
+        long open = directMemoryUsed();
+        tree.close();
+        long closed = directMemoryUsed();
+        // 200000 nodes fill 4 chunks of 2^16 records, all freed without waiting for a GC
+        Assert.assertTrue(open - closed >= 4L * 40 * 65536);
+        tree.close();
+        Assert.assertTrue(tree.isClosed());
+    }
+}
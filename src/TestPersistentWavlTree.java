@@ -0,0 +1,102 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestPersistentWavlTree {
+
+    @Test
+    public void testSameCountsAsWAVLTree() {
+        Random random = new Random(22);
+        WAVLTree expected = new WAVLTree();
+        PersistentWAVLTree tree = new PersistentWAVLTree();
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+            } else {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            }
+            if (i % 7 == 0) {
+                tree.snapshot();
+            }
+        }
+        Assert.assertEquals(expected.size(), tree.size());
+        Assert.assertEquals(expected.min(), tree.min());
+        Assert.assertEquals(expected.max(), tree.max());
+        Assert.assertEquals(expected.search(500), tree.search(500));
+        for (int i = 1; i <= expected.size(); i++) {
+            Assert.assertEquals(expected.select(i), tree.select(i));
+        }
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+    }
+
+    @Test
+    public void testSnapshotIsUnchanged() {
+        PersistentWAVLTree tree = new PersistentWAVLTree();
+        PersistentWAVLTree.Snapshot empty = tree.snapshot();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i, Integer.toString(i));
+        }
+        PersistentWAVLTree.Snapshot snapshot = tree.snapshot();
+        int[] keys = tree.keysToArray();
+
+        for (int i = 0; i < 100; i += 2) {
+            tree.delete(i);
+        }
+        for (int i = 100; i < 200; i++) {
+            tree.insert(i, "new");
+        }
+
+        Assert.assertTrue(empty.empty());
+        Assert.assertNull(empty.min());
+        Assert.assertEquals(100, snapshot.size());
+        Assert.assertArrayEquals(keys, snapshot.keysToArray());
+        Assert.assertEquals("0", snapshot.search(0));
+        Assert.assertNull(snapshot.search(150));
+        Assert.assertEquals("0", snapshot.min());
+        Assert.assertEquals("99", snapshot.max());
+        Assert.assertEquals("50", snapshot.select(51));
+        Assert.assertEquals(150, tree.size());
+        Assert.assertNull(tree.search(0));
+        Assert.assertEquals("new", tree.max());
+    }
+
+    @Test
+    public void testSnapshotReadDuringWrites() throws InterruptedException {
+        PersistentWAVLTree tree = new PersistentWAVLTree();
+        int n = 2000;
+        for (int i = 0; i < n; i++) {
+            tree.insert(i, Integer.toString(i));
+        }
+        PersistentWAVLTree.Snapshot snapshot = tree.snapshot();
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                for (int round = 0; round < 20; round++) {
+                    for (int i = 0; i < n; i++) {
+                        Assert.assertEquals(Integer.toString(i), snapshot.search(i));
+                    }
+                    Assert.assertEquals(n, snapshot.keysToArray().length);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        Random random = new Random(23);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(2 * n);
+            if (tree.delete(key) == -1) {
+                tree.insert(key, "other");
+            }
+        }
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPrimitiveWavlTrees {
+
+    @Test
+    public void testIntInt() {
+        IntIntWAVLTree tree = new IntIntWAVLTree();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(i * 3, i);
+        }
+        Assert.assertEquals(-1, tree.insert(3, 7));
+        Assert.assertEquals(1, tree.search(3, -1));
+        Assert.assertEquals(-1, tree.search(4, -1));
+        Assert.assertEquals(0, tree.min(-1));
+        Assert.assertEquals(99, tree.max(-1));
+        Assert.assertEquals(9, tree.select(10, -1));
+        tree.delete(0);
+        Assert.assertEquals(1, tree.min(-1));
+        Assert.assertEquals(99, tree.size());
+        Assert.assertEquals(-1, new IntIntWAVLTree().min(-1));
+    }
+
+    @Test
+    public void testIntLong() {
+        IntLongWAVLTree tree = new IntLongWAVLTree(1);
+        tree.insert(5, Long.MAX_VALUE);
+        tree.insert(2, 2L);
+        tree.insert(9, -9L);
+        Assert.assertEquals(Long.MAX_VALUE, tree.search(5, 0L));
+        Assert.assertArrayEquals(new int[]{2, 5, 9}, tree.keysToArray());
+        Assert.assertArrayEquals(new long[]{2L, Long.MAX_VALUE, -9L}, tree.valuesToArray());
+        Assert.assertEquals(-1, tree.delete(6));
+        Assert.assertTrue(tree.delete(5) >= 0);
+        Assert.assertFalse(tree.contains(5));
+    }
+
+    @Test
+    public void testLongLong() {
+        LongLongWAVLTree tree = new LongLongWAVLTree();
+        long base = 1L << 40;
+        for (long i = 0; i < 1000; i++) {
+            tree.insert(base + i, -i);
+        }
+        Assert.assertEquals(-500L, tree.search(base + 500, 1L));
+        Assert.assertEquals(1L, tree.search(500, 1L));
+        for (long i = 0; i < 1000; i += 2) {
+            tree.delete(base + i);
+        }
+        Assert.assertEquals(500, tree.size());
+        Assert.assertEquals(base + 1, tree.keysToArray()[0]);
+        Assert.assertEquals(-1L, tree.min(0L));
+        Assert.assertEquals(-999L, tree.max(0L));
+    }
+
+    @Test
+    public void testGeneric() {
+        IntObjectWAVLTree<Integer> tree = new IntObjectWAVLTree<>();
+        tree.insert(2, 20);
+        tree.insert(1, 10);
+        tree.insert(3, 30);
+        Assert.assertEquals(Integer.valueOf(20), tree.search(2));
+        Assert.assertEquals(null, tree.search(4));
+        Assert.assertEquals(Integer.valueOf(10), tree.select(1));
+        Assert.assertArrayEquals(new Object[]{10, 20, 30}, tree.infoToArray());
+    }
+
+    @Test
+    public void testSameCountsAsWAVLTree() {
+        WAVLTree expected = new WAVLTree();
+        LongLongWAVLTree tree = new LongLongWAVLTree();
+        for (int i = 0; i < 3000; i++) {
+            int key = (i * 7919) % 701;
+            if (i % 4 == 3) {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            } else {
+                Assert.assertEquals(expected.insert(key, ""), tree.insert(key, 0L));
+            }
+        }
+        Assert.assertEquals(expected.size(), tree.size());
+    }
+}
@@ -0,0 +1,94 @@
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestShardedWavlMap {
+
+    @Test
+    public void testSameResultsAsWAVLTree() {
+        Random random = new Random(23);
+        WAVLTree expected = new WAVLTree();
+        ShardedWAVLMap map = new ShardedWAVLMap(4);
+        Assert.assertTrue(map.empty());
+        Assert.assertNull(map.min());
+        Assert.assertNull(map.select(1));
+        for (int i = 0; i < 30000; i++) {
+            int key = random.nextInt() >> random.nextInt(32);
+            if (random.nextInt(3) == 0) {
+                Assert.assertEquals(expected.delete(key) == -1, map.delete(key) == -1);
+            } else {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)) == -1, map.insert(key, Integer.toString(key)) == -1);
+            }
+        }
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(expected.min(), map.min());
+        Assert.assertEquals(expected.max(), map.max());
+        for (int i = 0; i <= expected.size() + 1; i += 37) {
+            Assert.assertEquals(expected.select(i == 0 ? -1 : i), map.select(i == 0 ? -1 : i));
+        }
+        Assert.assertEquals(expected.select(expected.size()), map.select(expected.size()));
+        Assert.assertArrayEquals(expected.keysToArray(), map.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), map.infoToArray());
+    }
+
+    @Test
+    public void testSkewedShardsAreSplit() {
+        ShardedWAVLMap map = new ShardedWAVLMap(4);
+        int n = 50000;
+        // All keys fall into the shard starting at 0
+        for (int key = 0; key < n; key++) {
+            map.insert(key, Integer.toString(key));
+        }
+        Assert.assertTrue(map.shardCount() > 4);
+        Assert.assertTrue(map.shardCount() <= 8);
+        Assert.assertEquals(n, map.size());
+        for (int key = 0; key < n; key += 101) {
+            Assert.assertEquals(Integer.toString(key), map.search(key));
+            Assert.assertEquals(Integer.toString(key), map.select(key + 1));
+        }
+        Assert.assertEquals("0", map.min());
+        Assert.assertEquals(Integer.toString(n - 1), map.max());
+    }
+
+    @Test
+    public void testParallelWriters() throws InterruptedException {
+        ShardedWAVLMap map = new ShardedWAVLMap(8);
+        int perThread = 20000;
+        Thread[] writers = new Thread[4];
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int t = 0; t < writers.length; t++) {
+            int offset = t;
+            writers[t] = new Thread(() -> {
+                try {
+                    // Interleaved keys, so the threads meet in every shard
+                    for (int j = 0; j < perThread; j++) {
+                        Assert.assertTrue(map.insert(j * writers.length + offset, "v") != -1);
+                    }
+                    for (int j = 0; j < perThread; j += 2) {
+                        Assert.assertTrue(map.delete(j * writers.length + offset) != -1);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+        }
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        int[] keys = map.keysToArray();
+        Assert.assertEquals(writers.length * perThread / 2, map.size());
+        Assert.assertEquals(keys.length, map.size());
+        for (int j = 0; j < keys.length; j++) {
+            Assert.assertEquals((j / writers.length * 2 + 1) * writers.length + j % writers.length, keys[j]);
+        }
+    }
+}
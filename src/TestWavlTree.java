@@ -1,6 +1,12 @@
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.IntStream;
+
 public class TestWavlTree {
     private int assertNodeSize(WAVLTree.WAVLNode node) {
         if (node.getRank() == -1) {
@@ -12,6 +18,20 @@ public class TestWavlTree {
         return size;
     }
 
+    private void assertNodeRanks(WAVLTree.WAVLNode node) {
+        if (node.getRank() == -1) {
+            return;
+        }
+
+        int leftDiff = node.getLeftRankDiff();
+        int rightDiff = node.getRightRankDiff();
+        Assert.assertTrue(leftDiff == 1 || leftDiff == 2);
+        Assert.assertTrue(rightDiff == 1 || rightDiff == 2);
+        Assert.assertFalse(node.isLeaf() && node.getRank() != 0);
+        assertNodeRanks(node.getLeft());
+        assertNodeRanks(node.getRight());
+    }
+
     @Test
     public void test1() {
         WAVLTree tree = new WAVLTree();
@@ -490,4 +510,689 @@ public class TestWavlTree {
         tree.insert(14, "");
         tree.delete(8);
     }
+
+    @Test
+    public void testFromSorted() {
+        for (int n = 0; n < 70; n++) {
+            int[] keys = new int[n];
+            String[] values = new String[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = i * 2;
+                values[i] = Integer.toString(i * 2);
+            }
+            WAVLTree tree = WAVLTree.fromSorted(keys, values);
+            Assert.assertEquals(n, tree.size());
+            Assert.assertArrayEquals(keys, tree.keysToArray());
+            if (n > 0) {
+                assertNodeSize(tree.getRoot());
+                assertNodeRanks(tree.getRoot());
+                Assert.assertEquals("0", tree.min());
+                Assert.assertEquals(Integer.toString(n * 2 - 2), tree.max());
+            }
+        }
+
+        WAVLTree tree = WAVLTree.fromSorted(new int[]{1, 3, 5, 7}, new String[]{"a", "b", "c", "d"});
+        tree.insert(4, "e");
+        tree.delete(1);
+        tree.delete(7);
+        Assert.assertArrayEquals(new String[]{"b", "e", "c"}, tree.infoToArray());
+        assertNodeRanks(tree.getRoot());
+    }
+
+    @Test
+    public void testFromSortedIterator() {
+        WAVLTree tree = WAVLTree.fromSorted(IntStream.range(0, 1000).iterator(),
+                IntStream.range(0, 1000).mapToObj(Integer::toString).iterator());
+        Assert.assertEquals(1000, tree.size());
+        Assert.assertEquals("500", tree.search(500));
+        Assert.assertEquals("10", tree.select(11));
+        assertNodeRanks(tree.getRoot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromSortedUnsorted() {
+        WAVLTree.fromSorted(new int[]{1, 1}, new String[]{"a", "b"});
+    }
+
+    @Test
+    public void testApplyBatch() {
+        WAVLTree tree = new WAVLTree();
+        tree.insert(5, "a");
+        tree.insert(1, "b");
+        int[] results = tree.applyBatch(
+                new int[]{9, 1, 3, 5, 3, 7},
+                new String[]{"c", null, "d", "e", null, "f"},
+                new boolean[]{false, true, false, false, true, false});
+
+        Assert.assertEquals(-1, results[3]);
+        Assert.assertTrue(results[1] >= 0);
+        Assert.assertTrue(results[4] >= 0);
+        Assert.assertArrayEquals(new int[]{5, 7, 9}, tree.keysToArray());
+        Assert.assertArrayEquals(new String[]{"a", "f", "c"}, tree.infoToArray());
+        assertNodeSize(tree.getRoot());
+        assertNodeRanks(tree.getRoot());
+    }
+
+    @Test
+    public void testApplyBatchMatchesSortedInserts() {
+        int n = 500;
+        int[] keys = new int[n];
+        String[] infos = new String[n];
+        boolean[] deletes = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (i * 7919) % 1009;
+            infos[i] = Integer.toString(keys[i]);
+        }
+        WAVLTree batched = new WAVLTree();
+        int[] results = batched.applyBatch(keys, infos, deletes);
+
+        int[] sorted = keys.clone();
+        Arrays.sort(sorted);
+        WAVLTree expected = new WAVLTree();
+        int expectedSum = 0;
+        for (int key : sorted) {
+            expectedSum += expected.insert(key, Integer.toString(key));
+        }
+        int sum = 0;
+        for (int result : results) {
+            sum += result;
+        }
+        Assert.assertEquals(expectedSum, sum);
+        Assert.assertArrayEquals(expected.keysToArray(), batched.keysToArray());
+        assertNodeSize(batched.getRoot());
+        for (int i = 1; i <= n; i++) {
+            Assert.assertEquals(expected.select(i), batched.select(i));
+        }
+    }
+
+    @Test
+    public void testJoin() {
+        WAVLTree left = WAVLTree.fromSorted(IntStream.range(0, 10).toArray(), new String[10]);
+        WAVLTree right = new WAVLTree();
+        for (int i = 500; i > 11; i--) {
+            right.insert(i, Integer.toString(i));
+        }
+        WAVLTree joined = WAVLTree.join(left, 10, "pivot", right);
+
+        Assert.assertTrue(left.empty());
+        Assert.assertTrue(right.empty());
+        Assert.assertEquals(500, joined.size());
+        Assert.assertEquals("pivot", joined.search(10));
+        Assert.assertEquals("500", joined.max());
+        Assert.assertEquals(0, joined.keysToArray()[0]);
+        assertNodeSize(joined.getRoot());
+        assertNodeRanks(joined.getRoot());
+
+        WAVLTree concatenated = WAVLTree.join(joined, WAVLTree.fromSorted(new int[]{600, 601}, new String[]{"a", "b"}));
+        Assert.assertEquals(502, concatenated.size());
+        Assert.assertEquals("a", concatenated.search(600));
+        assertNodeRanks(concatenated.getRoot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJoinOverlapping() {
+        WAVLTree left = WAVLTree.fromSorted(new int[]{1, 5}, new String[2]);
+        WAVLTree right = WAVLTree.fromSorted(new int[]{3, 7}, new String[2]);
+        WAVLTree.join(left, right);
+    }
+
+    @Test
+    public void testSplit() {
+        WAVLTree tree = new WAVLTree();
+        for (int i = 0; i < 1000; i += 2) {
+            tree.insert(i, Integer.toString(i));
+        }
+        WAVLTree larger = tree.split(500);
+
+        Assert.assertEquals(250, tree.size());
+        Assert.assertEquals(250, larger.size());
+        Assert.assertEquals("498", tree.max());
+        Assert.assertEquals("500", larger.min());
+        assertNodeSize(tree.getRoot());
+        assertNodeRanks(tree.getRoot());
+        assertNodeSize(larger.getRoot());
+        assertNodeRanks(larger.getRoot());
+
+        WAVLTree upper = larger.split(751);
+        Assert.assertEquals("750", larger.max());
+        Assert.assertEquals("752", upper.min());
+        Assert.assertEquals(124, upper.split(-5).size());
+        Assert.assertTrue(upper.empty());
+
+        WAVLTree rejoined = WAVLTree.join(tree, larger);
+        Assert.assertEquals(376, rejoined.size());
+        rejoined.insert(1, "1");
+        Assert.assertEquals("1", rejoined.search(1));
+        assertNodeSize(rejoined.getRoot());
+        assertNodeRanks(rejoined.getRoot());
+    }
+
+    @Test
+    public void testUnion() {
+        WAVLTree evens = new WAVLTree();
+        WAVLTree threes = new WAVLTree();
+        for (int i = 0; i < 10000; i++) {
+            evens.insert(i * 2, "even");
+            threes.insert(i * 3, "three");
+        }
+        WAVLTree union = WAVLTree.union(evens, threes);
+
+        Assert.assertTrue(evens.empty());
+        Assert.assertTrue(threes.empty());
+        int[] expected = IntStream.range(0, 30000).filter(i -> (i % 2 == 0 && i < 20000) || i % 3 == 0).toArray();
+        Assert.assertArrayEquals(expected, union.keysToArray());
+        Assert.assertEquals("even", union.search(6));
+        Assert.assertEquals("three", union.search(9));
+        assertNodeSize(union.getRoot());
+        assertNodeRanks(union.getRoot());
+    }
+
+    @Test
+    public void testIntersectionDifference() {
+        WAVLTree evens = WAVLTree.fromSorted(IntStream.range(0, 10000).map(i -> i * 2).toArray(), new String[10000]);
+        WAVLTree threes = WAVLTree.fromSorted(IntStream.range(0, 10000).map(i -> i * 3).toArray(), new String[10000]);
+        WAVLTree sixes = WAVLTree.intersection(evens, threes);
+        Assert.assertArrayEquals(IntStream.range(0, 20000).filter(i -> i % 6 == 0).toArray(), sixes.keysToArray());
+        assertNodeSize(sixes.getRoot());
+        assertNodeRanks(sixes.getRoot());
+
+        WAVLTree all = WAVLTree.fromSorted(IntStream.range(0, 100).toArray(), new String[100]);
+        WAVLTree rest = WAVLTree.difference(all, sixes);
+        Assert.assertArrayEquals(IntStream.range(0, 100).filter(i -> i % 6 != 0).toArray(), rest.keysToArray());
+        assertNodeSize(rest.getRoot());
+        assertNodeRanks(rest.getRoot());
+    }
+
+    @Test
+    public void testRank() {
+        WAVLTree tree = new WAVLTree();
+        Assert.assertEquals(-1, tree.rank(3));
+        Assert.assertEquals(0, tree.countLessThan(3));
+        for (int i = 1; i <= 500; i++) {
+            tree.insert(i * 10, Integer.toString(i * 10));
+        }
+
+        for (int i = 1; i <= 500; i++) {
+            Assert.assertEquals(i, tree.rank(i * 10));
+            Assert.assertEquals(Integer.toString(i * 10), tree.select(tree.rank(i * 10)));
+            Assert.assertEquals(-1, tree.rank(i * 10 + 1));
+            Assert.assertEquals(i - 1, tree.countLessThan(i * 10));
+            Assert.assertEquals(i, tree.countLessThan(i * 10 + 1));
+        }
+        Assert.assertEquals(0, tree.countLessThan(Integer.MIN_VALUE));
+        Assert.assertEquals(500, tree.countLessThan(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRangeQueries() {
+        WAVLTree tree = new WAVLTree();
+        Assert.assertEquals(0, tree.countInRange(0, 10));
+        for (int i = 0; i < 1000; i += 3) {
+            tree.insert(i, Integer.toString(i));
+        }
+
+        Assert.assertEquals(3, tree.countInRange(10, 20));
+        Assert.assertEquals(4, tree.countInRange(9, 18));
+        Assert.assertEquals(0, tree.countInRange(20, 10));
+        Assert.assertEquals(334, tree.countInRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+
+        int[] page = new int[5];
+        Assert.assertEquals(3, tree.keysInRange(10, 19, page, 2));
+        Assert.assertArrayEquals(new int[]{0, 0, 12, 15, 18}, page);
+
+        int lo = 100;
+        int total = 0;
+        int written;
+        while ((written = tree.keysInRange(lo, 200, page, 0)) > 0) {
+            total += written;
+            lo = page[written - 1] + 1;
+        }
+        Assert.assertEquals(tree.countInRange(100, 200), total);
+
+        StringBuilder visited = new StringBuilder();
+        tree.forEachInRange(990, 2000, (key, info) -> {
+            visited.append(info).append(',');
+            return true;
+        });
+        Assert.assertEquals("990,993,996,999,", visited.toString());
+
+        int[] count = new int[1];
+        tree.forEachInRange(0, 999, (key, info) -> ++count[0] < 10);
+        Assert.assertEquals(10, count[0]);
+    }
+
+    @Test
+    public void testFingerSearch() {
+        Random random = new Random(12);
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        tree.setFingerSearch(true);
+        Assert.assertTrue(tree.isFingerSearch());
+
+        int key = 0;
+        for (int i = 0; i < 20000; i++) {
+            key += random.nextInt(21) - 10;
+            switch (random.nextInt(3)) {
+                case 0:
+                    Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+                    break;
+                case 1:
+                    Assert.assertEquals(expected.delete(key), tree.delete(key));
+                    break;
+                default:
+                    Assert.assertEquals(expected.search(key), tree.search(key));
+            }
+        }
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        assertNodeSize(tree.getRoot());
+    }
+
+    @Test
+    public void testCursor() {
+        WAVLTree tree = new WAVLTree();
+        WAVLTree.Cursor cursor = tree.cursor();
+        Assert.assertFalse(cursor.seekFirst());
+        for (int i = 0; i < 100; i += 2) {
+            tree.insert(i, Integer.toString(i));
+        }
+
+        Assert.assertTrue(cursor.seek(51));
+        Assert.assertEquals(52, cursor.key());
+        Assert.assertEquals("52", cursor.value());
+        Assert.assertTrue(cursor.prev());
+        Assert.assertEquals(50, cursor.key());
+        Assert.assertTrue(cursor.seekFloor(51));
+        Assert.assertEquals(50, cursor.key());
+        Assert.assertFalse(cursor.seek(99));
+        Assert.assertFalse(cursor.isValid());
+
+        int expected = 0;
+        for (boolean valid = cursor.seekFirst(); valid; valid = cursor.next()) {
+            Assert.assertEquals(expected, cursor.key());
+            expected += 2;
+        }
+        Assert.assertEquals(100, expected);
+        for (boolean valid = cursor.seekLast(); valid; valid = cursor.prev()) {
+            expected -= 2;
+            Assert.assertEquals(expected, cursor.key());
+        }
+        Assert.assertEquals(0, expected);
+    }
+
+    @Test(expected = ConcurrentModificationException.class)
+    public void testCursorFailFast() {
+        WAVLTree tree = new WAVLTree();
+        tree.insert(1, "a");
+        tree.insert(2, "b");
+        WAVLTree.Cursor cursor = tree.cursor();
+        cursor.seekFirst();
+        tree.insert(3, "c");
+        cursor.next();
+    }
+
+    @Test
+    public void testParallelStreams() {
+        WAVLTree tree = WAVLTree.fromSorted(IntStream.range(0, 100000).toArray(), new String[100000]);
+        for (int i = 0; i < 1000; i++) {
+            tree.insert(-i - 1, "negative");
+        }
+
+        Assert.assertArrayEquals(tree.keysToArray(), tree.keys().parallel().toArray());
+        Assert.assertEquals(tree.size(), tree.keys().parallel().count());
+        Assert.assertEquals(1000, tree.entries().parallel().filter(entry -> "negative".equals(entry.getValue())).count());
+        Assert.assertEquals(-1000, tree.entries().findFirst().get().getKey().intValue());
+
+        Spliterator.OfInt spliterator = tree.keySpliterator();
+        Assert.assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.SORTED));
+        Spliterator.OfInt prefix = spliterator.trySplit();
+        Assert.assertEquals(tree.size(), prefix.estimateSize() + spliterator.estimateSize());
+        int[] first = new int[1];
+        spliterator.tryAdvance((int key) -> first[0] = key);
+        Assert.assertEquals(tree.keysToArray()[(int) prefix.estimateSize()], first[0]);
+    }
+
+    @Test
+    public void testEntriesToArrays() {
+        int n = 100000;
+        int[] sortedKeys = IntStream.range(0, n).map(i -> i * 3).toArray();
+        String[] sortedValues = Arrays.stream(sortedKeys).mapToObj(Integer::toString).toArray(String[]::new);
+        WAVLTree tree = WAVLTree.fromSorted(sortedKeys, sortedValues);
+        tree.delete(0);
+        tree.insert(-1, "-1");
+
+        int[] keys = new int[n + 1];
+        String[] values = new String[n + 1];
+        Assert.assertEquals(n, tree.entriesToArrays(keys, values));
+        Assert.assertArrayEquals(tree.keysToArray(), Arrays.copyOf(keys, n));
+        Assert.assertArrayEquals(tree.infoToArray(), Arrays.copyOf(values, n));
+        Assert.assertEquals(-1, keys[0]);
+        Assert.assertEquals("3", values[1]);
+        Assert.assertEquals(Integer.toString((n - 1) * 3), values[n - 1]);
+        Assert.assertEquals(null, values[n]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testEntriesToArraysTooShort() {
+        WAVLTree tree = WAVLTree.fromSorted(new int[]{1, 2}, new String[]{"a", "b"});
+        tree.entriesToArrays(new int[2], new String[1]);
+    }
+
+    @Test
+    public void testBuildParallel() {
+        Random random = new Random(14);
+        int n = 50000;
+        int[] keys = new int[n];
+        String[] values = new String[n];
+        WAVLTree expected = new WAVLTree();
+        for (int i = 0; i < n; i++) {
+            keys[i] = random.nextInt(2 * n) - n;
+            values[i] = Integer.toString(i);
+            expected.insert(keys[i], values[i]);
+        }
+
+        WAVLTree tree = WAVLTree.buildParallel(keys, values);
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+        Assert.assertEquals(expected.min(), tree.min());
+        Assert.assertEquals(expected.max(), tree.max());
+        assertNodeSize(tree.getRoot());
+        assertNodeRanks(tree.getRoot());
+
+        Assert.assertTrue(WAVLTree.buildParallel(new int[0], new String[0]).empty());
+    }
+
+    @Test
+    public void testThreaded() {
+        Random random = new Random(15);
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        tree.insert(5, "5");
+        expected.insert(5, "5");
+        tree.setThreaded(true);
+        Assert.assertTrue(tree.isThreaded());
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.insert(key, ""), tree.insert(key, ""));
+            } else {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            }
+        }
+
+        WAVLTree larger = tree.split(500);
+        Assert.assertTrue(larger.isThreaded());
+        WAVLTree joined = WAVLTree.join(tree, larger);
+        Assert.assertTrue(joined.isThreaded());
+
+        int[] keys = expected.keysToArray();
+        WAVLTree.Cursor cursor = joined.cursor();
+        int index = 0;
+        for (boolean valid = cursor.seekFirst(); valid; valid = cursor.next()) {
+            Assert.assertEquals(keys[index++], cursor.key());
+        }
+        Assert.assertEquals(keys.length, index);
+        for (boolean valid = cursor.seekLast(); valid; valid = cursor.prev()) {
+            Assert.assertEquals(keys[--index], cursor.key());
+        }
+        Assert.assertEquals(0, index);
+
+        WAVLTree rejoined = WAVLTree.join(joined, new WAVLTree());
+        Assert.assertTrue(rejoined.isThreaded());
+        rejoined.setThreaded(false);
+        Assert.assertFalse(rejoined.isThreaded());
+        Assert.assertArrayEquals(keys, rejoined.keysToArray());
+    }
+
+    @Test
+    public void testSetOperationsOnThreadedTrees() {
+        for (int operation = 0; operation < 3; operation++) {
+            WAVLTree evens = new WAVLTree();
+            WAVLTree threes = new WAVLTree();
+            WAVLTree expected = new WAVLTree();
+            for (int k = 0; k < 3000; k++) {
+                if (k % 2 == 0) {
+                    evens.insert(k, "even");
+                }
+                if (k % 3 == 0) {
+                    threes.insert(k, "three");
+                }
+                boolean keep = operation == 0 ? k % 2 == 0 || k % 3 == 0
+                        : operation == 1 ? k % 6 == 0 : k % 2 == 0 && k % 3 != 0;
+                if (keep) {
+                    expected.insert(k, "");
+                }
+            }
+            evens.setThreaded(true);
+            threes.setThreaded(true);
+            WAVLTree result = operation == 0 ? WAVLTree.union(evens, threes)
+                    : operation == 1 ? WAVLTree.intersection(evens, threes) : WAVLTree.difference(evens, threes);
+            Assert.assertTrue(result.isThreaded());
+
+            int[] keys = expected.keysToArray();
+            WAVLTree.Cursor cursor = result.cursor();
+            int index = 0;
+            for (boolean valid = cursor.seekFirst(); valid; valid = cursor.next()) {
+                Assert.assertEquals(keys[index++], cursor.key());
+            }
+            Assert.assertEquals(keys.length, index);
+            for (boolean valid = cursor.seekLast(); valid; valid = cursor.prev()) {
+                Assert.assertEquals(keys[--index], cursor.key());
+            }
+            Assert.assertEquals(0, index);
+            for (int k : keys) {
+                Assert.assertTrue(result.delete(k) != -1);
+            }
+            Assert.assertTrue(result.empty());
+        }
+
+        WAVLTree threaded = new WAVLTree();
+        WAVLTree plain = new WAVLTree();
+        for (int k = 0; k < 100; k++) {
+            threaded.insert(k, "");
+            plain.insert(k + 50, "");
+        }
+        threaded.setThreaded(true);
+        WAVLTree mixed = WAVLTree.intersection(threaded, plain);
+        Assert.assertFalse(mixed.isThreaded());
+        Assert.assertEquals(50, mixed.size());
+        mixed.setThreaded(true);
+        WAVLTree.Cursor cursor = mixed.cursor();
+        int key = 50;
+        for (boolean valid = cursor.seekFirst(); valid; valid = cursor.next()) {
+            Assert.assertEquals(key++, cursor.key());
+        }
+        Assert.assertEquals(100, key);
+    }
+
+    @Test
+    public void testLazySizes() {
+        Random random = new Random(17);
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        tree.setLazySizes(true);
+        Assert.assertTrue(tree.isLazySizes());
+        for (int i = 0; i < 5000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextInt(3) > 0) {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+            } else {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            }
+            if (i % 500 == 0) {
+                Assert.assertEquals(expected.size(), tree.size());
+                Assert.assertEquals(expected.select(expected.size() / 2 + 1), tree.select(tree.size() / 2 + 1));
+                Assert.assertEquals(expected.countLessThan(key), tree.countLessThan(key));
+            }
+        }
+
+        tree.setLazySizes(false);
+        Assert.assertFalse(tree.isLazySizes());
+        assertNodeSize(tree.getRoot());
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+    }
+
+    @Test
+    public void testAppendMax() {
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        for (int i = 0; i < 10000; i++) {
+            Assert.assertEquals(expected.insert(i * 2, Integer.toString(i)), tree.appendMax(i * 2, Integer.toString(i)));
+        }
+        Assert.assertEquals(10000, tree.size());
+        Assert.assertEquals("4999", tree.select(5000));
+        Assert.assertEquals(2500, tree.countLessThan(5000));
+        assertNodeSize(tree.getRoot());
+        assertNodeRanks(tree.getRoot());
+
+        tree.insert(5, "middle");
+        tree.delete(0);
+        Assert.assertArrayEquals(Arrays.copyOf(tree.keysToArray(), 3), new int[]{2, 4, 5});
+        Assert.assertEquals(10000, tree.size());
+        assertNodeSize(tree.getRoot());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAppendMaxNotLarger() {
+        WAVLTree tree = new WAVLTree();
+        tree.appendMax(5, "a");
+        tree.appendMax(5, "b");
+    }
+
+    @Test
+    public void testNodePooling() {
+        Random random = new Random(20);
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        tree.setNodePooling(true);
+        Assert.assertTrue(tree.isNodePooling());
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(1000);
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)), tree.insert(key, Integer.toString(key)));
+            } else {
+                Assert.assertEquals(expected.delete(key), tree.delete(key));
+            }
+        }
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+        assertNodeSize(tree.getRoot());
+        assertNodeRanks(tree.getRoot());
+
+        int size = tree.size();
+        for (int key : tree.keysToArray()) {
+            tree.delete(key);
+        }
+        Assert.assertTrue(tree.trimPool() >= size);
+        Assert.assertEquals(0, tree.trimPool());
+    }
+
+    @Test
+    public void testRelaxedBalance() {
+        Random random = new Random(25);
+        WAVLTree expected = new WAVLTree();
+        WAVLTree tree = new WAVLTree();
+        tree.setRelaxedBalance(true);
+        Assert.assertTrue(tree.isRelaxedBalance());
+        for (int i = 0; i < 20000; i++) {
+            int key = random.nextInt(2000);
+            if (random.nextBoolean()) {
+                Assert.assertEquals(expected.insert(key, Integer.toString(key)) == -1, tree.insert(key, Integer.toString(key)) == -1);
+            } else {
+                Assert.assertEquals(expected.delete(key) == -1, tree.delete(key) == -1);
+            }
+            Assert.assertEquals(expected.search(key), tree.search(key));
+            if (i % 100 == 0) {
+                tree.rebalance(10);
+            }
+        }
+        Assert.assertEquals(expected.size(), tree.size());
+        Assert.assertEquals(expected.select(expected.size() / 2), tree.select(expected.size() / 2));
+        Assert.assertArrayEquals(expected.keysToArray(), tree.keysToArray());
+        assertNodeSize(tree.getRoot());
+
+        Assert.assertFalse(tree.isBalanced());
+        while (tree.rebalance(100) > 0) {
+            assertNodeSize(tree.getRoot());
+        }
+        Assert.assertTrue(tree.isBalanced());
+        assertNodeRanks(tree.getRoot());
+        Assert.assertArrayEquals(expected.infoToArray(), tree.infoToArray());
+
+        tree.insert(-1, "a");
+        Assert.assertEquals(0, tree.insert(-2, "b"));
+        tree.setRelaxedBalance(false);
+        Assert.assertTrue(tree.isBalanced());
+        assertNodeRanks(tree.getRoot());
+        assertNodeSize(tree.getRoot());
+        Assert.assertEquals("b", tree.min());
+    }
+
+    @Test
+    public void testRelaxedBalanceSortedKeys() {
+        int n = 50000;
+        WAVLTree lazy = new WAVLTree();
+        lazy.setRelaxedBalance(true);
+        lazy.setLazySizes(true);
+        for (int k = 0; k < n; k++) {
+            lazy.insert(k, Integer.toString(k));
+        }
+        Assert.assertEquals(Integer.toString(n / 2 - 1), lazy.select(n / 2));
+        Assert.assertEquals(n, lazy.keysToArray().length);
+        Assert.assertEquals(n, lazy.keys().count());
+
+        WAVLTree appended = new WAVLTree();
+        appended.setRelaxedBalance(true);
+        for (int k = 0; k < n; k++) {
+            appended.appendMax(k, Integer.toString(k));
+        }
+        Assert.assertEquals(Integer.toString(n - 1), appended.select(n));
+        Assert.assertEquals(n, appended.rank(n - 1));
+
+        WAVLTree batched = new WAVLTree();
+        batched.setRelaxedBalance(true);
+        int[] keys = new int[n];
+        String[] infos = new String[n];
+        boolean[] deletes = new boolean[n];
+        for (int k = 0; k < n; k++) {
+            keys[k] = k;
+            infos[k] = Integer.toString(k);
+        }
+        batched.applyBatch(keys, infos, deletes);
+        Assert.assertEquals(n, batched.size());
+        Assert.assertEquals(n / 2, batched.rank(n / 2 - 1));
+
+        batched.setRelaxedBalance(false);
+        Assert.assertTrue(batched.isBalanced());
+        assertNodeRanks(batched.getRoot());
+        assertNodeSize(batched.getRoot());
+        Assert.assertArrayEquals(lazy.keysToArray(), batched.keysToArray());
+    }
+
+    private int height(WAVLTree.WAVLNode node) {
+        if (node == null || !node.isInnerNode()) {
+            return -1;
+        }
+        return 1 + Math.max(height(node.getLeft()), height(node.getRight()));
+    }
+
+    @Test
+    public void testRelaxedBalanceBoundsHeight() {
+        Random random = new Random(26);
+        WAVLTree tree = new WAVLTree();
+        tree.setRelaxedBalance(true);
+        for (int i = 0; i < 100000; i++) {
+            if (i < 50000) {
+                Assert.assertEquals(0, tree.insert(i, ""));
+            } else if (random.nextInt(3) == 0) {
+                tree.delete(random.nextInt(100000));
+            } else {
+                tree.insert(random.nextInt(100000), "");
+            }
+            if (i % 1000 == 999) {
+                int log = 32 - Integer.numberOfLeadingZeros(tree.size());
+                Assert.assertTrue(height(tree.getRoot()) <= 4 * log + 1);
+            }
+        }
+        assertNodeSize(tree.getRoot());
+    }
 }
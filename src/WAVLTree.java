@@ -1,3 +1,21 @@
+import java.util.Arrays;
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * WAVLTree
  * <p>
@@ -8,20 +26,38 @@
 
 public class WAVLTree {
 
-    private WAVLNode EXTERNAL_NODE = null;
+    private static final WAVLNode EXTERNAL_NODE = new WAVLNode(-1, "OUT_NODE");
+
+    static {
+        EXTERNAL_NODE.rank = -1;
+        EXTERNAL_NODE.subTreeSize = 0;
+    }
+
     private WAVLNode root;
     private WAVLNode minNode;
     private WAVLNode maxNode;
+    private WAVLNode lastAccessed;
+    private boolean deferSizes;
+    private boolean fingerSearch;
+    private boolean threaded;
+    private boolean pooling;
+    /**
+     * Recycled nodes chained through their right link
+     */
+    private WAVLNode pool;
+    private int poolSize;
+    private boolean relaxed;
+    /**
+     * Relaxed updates left before the whole tree is repaired, reset to the root rank + 1 by every full repair
+     */
+    private int relaxedBudget;
+    private int modCount;
     private ActionsCount actionsCount;
 
     /**
      * Complexity O(1)
      */
     public WAVLTree() {
-        this.EXTERNAL_NODE = new WAVLNode(-1, "OUT_NODE");
-        this.EXTERNAL_NODE.rank = -1;
-        this.EXTERNAL_NODE.subTreeSize = 0;
-
         this.root = null;
         this.minNode = null;
         this.maxNode = null;
@@ -29,6 +65,522 @@ public class WAVLTree {
 
     }
 
+    /**
+     * public static WAVLTree fromSorted(int[] keys, String[] values)
+     * <p>
+     * Builds a perfectly balanced tree from keys in strictly increasing order,
+     * values[i] is the info of keys[i].
+     * Throws IllegalArgumentException if the keys are not strictly increasing
+     * or the arrays differ in length.
+     * <p>
+     * Complexity O(n)
+     */
+    public static WAVLTree fromSorted(int[] keys, String[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Got " + keys.length + " keys and " + values.length + " values");
+        }
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i - 1] >= keys[i]) {
+                throw new IllegalArgumentException("Keys are not strictly increasing at index " + i);
+            }
+        }
+
+        WAVLTree tree = new WAVLTree();
+        if (keys.length > 0) {
+            tree.setSubtree(buildBalanced(keys, values, 0, keys.length - 1));
+        }
+        return tree;
+    }
+
+    /**
+     * public static WAVLTree buildParallel(int[] keys, String[] values)
+     * <p>
+     * Builds a perfectly balanced tree from unsorted keys, values[i] is the info of keys[i].
+     * Like inserting the items in array order, the first item of a duplicate key is kept
+     * and the later ones are dropped.
+     * Sorting and building run in parallel on the common fork/join pool.
+     * Throws IllegalArgumentException if the arrays differ in length.
+     * <p>
+     * Complexity O(nlogn) work, O(n) of it for the build
+     */
+    public static WAVLTree buildParallel(int[] keys, String[] values) {
+        if (keys.length != values.length) {
+            throw new IllegalArgumentException("Got " + keys.length + " keys and " + values.length + " values");
+        }
+
+        // The low 32 bits keep the array index, so the first of equal keys sorts first
+        int n = keys.length;
+        long[] order = new long[n];
+        Arrays.parallelSetAll(order, j -> ((long) keys[j] << 32) | j);
+        Arrays.parallelSort(order);
+
+        int[] sortedKeys = new int[n];
+        String[] sortedValues = new String[n];
+        IntStream.range(0, n).parallel().forEach(j -> {
+            int index = (int) order[j];
+            sortedKeys[j] = keys[index];
+            sortedValues[j] = values[index];
+        });
+
+        int count = n;
+        for (int j = 1; j < count; j++) {
+            if (sortedKeys[j - 1] == sortedKeys[j]) {
+                count = dropDuplicates(sortedKeys, sortedValues, j);
+                break;
+            }
+        }
+
+        WAVLTree tree = new WAVLTree();
+        if (count > 0) {
+            tree.setSubtree(ForkJoinPool.commonPool().invoke(new BuildTask(sortedKeys, sortedValues, 0, count - 1)));
+        }
+        return tree;
+    }
+
+    /**
+     * Compact sorted keys in place from index `from`, the first duplicate, keeping the first of equal keys
+     *
+     * @return The number of distinct keys
+     * <p>
+     * Complexity O(n)
+     */
+    private static int dropDuplicates(int[] keys, String[] values, int from) {
+        int count = from;
+        for (int j = from + 1; j < keys.length; j++) {
+            if (keys[j] != keys[count - 1]) {
+                keys[count] = keys[j];
+                values[count] = values[j];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * public static WAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values)
+     * <p>
+     * Builds a perfectly balanced tree from a sorted stream of keys and their values,
+     * e.g. `fromSorted(intStream.iterator(), stream.iterator())`.
+     * Stops when either iterator is exhausted.
+     * <p>
+     * Complexity O(n)
+     */
+    public static WAVLTree fromSorted(PrimitiveIterator.OfInt keys, Iterator<String> values) {
+        int[] keyBuffer = new int[16];
+        String[] valueBuffer = new String[16];
+        int count = 0;
+        while (keys.hasNext() && values.hasNext()) {
+            if (count == keyBuffer.length) {
+                keyBuffer = Arrays.copyOf(keyBuffer, count * 2);
+                valueBuffer = Arrays.copyOf(valueBuffer, count * 2);
+            }
+            keyBuffer[count] = keys.nextInt();
+            valueBuffer[count] = values.next();
+            count++;
+        }
+        return fromSorted(Arrays.copyOf(keyBuffer, count), Arrays.copyOf(valueBuffer, count));
+    }
+
+    /**
+     * Build the subtree of keys[from..to] around the middle key.
+     * The heights of sibling subtrees differ by at most one, so rank = height is a valid WAVL rank.
+     * <p>
+     * Complexity O(to - from)
+     */
+    private static WAVLNode buildBalanced(int[] keys, String[] values, int from, int to) {
+        int middle = (from + to) >>> 1;
+        WAVLNode node = new WAVLNode(keys[middle], values[middle]);
+        if (from < middle) {
+            node.left = buildBalanced(keys, values, from, middle - 1);
+            node.left.parent = node;
+        }
+        if (middle < to) {
+            node.right = buildBalanced(keys, values, middle + 1, to);
+            node.right.parent = node;
+        }
+        node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+        node.subTreeSize = to - from + 1;
+        return node;
+    }
+
+    /**
+     * public void setFingerSearch(boolean enabled)
+     * <p>
+     * When enabled, search, insert and delete start from the last accessed node,
+     * or from the min or max node if k is closer to them, instead of from the root.
+     * Lookups of keys near the previous one then cost O(log(d)) instead of O(logn).
+     * <p>
+     * Complexity O(1)
+     */
+    public void setFingerSearch(boolean enabled) {
+        this.fingerSearch = enabled;
+    }
+
+    /**
+     * public boolean isFingerSearch()
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isFingerSearch() {
+        return this.fingerSearch;
+    }
+
+    /**
+     * public void setThreaded(boolean enabled)
+     * <p>
+     * When enabled, every node keeps links to its in-order neighbours through insert, delete,
+     * join and split, so successor and predecessor steps (in deletes, cursors, range scans
+     * and min/max maintenance) take O(1) in the worst case.
+     * The trees returned by fromSorted and buildParallel are not threaded,
+     * union, intersection and difference are threaded like join.
+     * <p>
+     * Complexity O(n) when the mode changes, O(1) otherwise
+     */
+    public void setThreaded(boolean enabled) {
+        if (enabled == this.threaded) {
+            return;
+        }
+        relink(enabled);
+    }
+
+    /**
+     * Rebuild the in-order links of every node, or clear them, and set the mode
+     * <p>
+     * Complexity O(n)
+     */
+    private void relink(boolean enabled) {
+        // Walk with the unthreaded successor lookup, the links may be stale
+        this.threaded = false;
+        WAVLNode prev = null;
+        for (WAVLNode node = this.minNode; node != null; node = getSuccessor(node)) {
+            if (enabled) {
+                node.prev = prev;
+                if (prev != null) {
+                    prev.next = node;
+                }
+            } else {
+                node.prev = null;
+                if (prev != null) {
+                    prev.next = null;
+                }
+            }
+            prev = node;
+        }
+        if (prev != null) {
+            prev.next = null;
+        }
+        this.threaded = enabled;
+    }
+
+    /**
+     * public boolean isThreaded()
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isThreaded() {
+        return this.threaded;
+    }
+
+    /**
+     * public void setLazySizes(boolean enabled)
+     * <p>
+     * When enabled, insert and delete only mark the sizes on their path as stale, which stops early
+     * at the first node that is already stale. The sizes are recomputed when size, select, rank
+     * or another query first needs them, so trees that rarely use them skip most of the upkeep.
+     * Disabling the mode recomputes all stale sizes.
+     * <p>
+     * Complexity O(1) to enable, O(number of stale nodes) to disable
+     */
+    public void setLazySizes(boolean enabled) {
+        this.deferSizes = enabled;
+        if (!enabled) {
+            refreshSizes();
+        }
+    }
+
+    /**
+     * public boolean isLazySizes()
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isLazySizes() {
+        return this.deferSizes;
+    }
+
+    /**
+     * public void setNodePooling(boolean enabled)
+     * <p>
+     * When enabled, deleted nodes are kept in a per-tree pool and reused by later inserts,
+     * so a workload of inserts and deletes at a stable size stops allocating.
+     * Nodes obtained through getRoot() must not be held across a delete while pooling.
+     * Disabling the mode empties the pool.
+     * <p>
+     * Complexity O(1)
+     */
+    public void setNodePooling(boolean enabled) {
+        this.pooling = enabled;
+        if (!enabled) {
+            trimPool();
+        }
+    }
+
+    /**
+     * public boolean isNodePooling()
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isNodePooling() {
+        return this.pooling;
+    }
+
+    /**
+     * public int trimPool()
+     * <p>
+     * Releases the pooled nodes to the garbage collector, returns how many there were
+     * <p>
+     * Complexity O(1)
+     */
+    public int trimPool() {
+        int released = this.poolSize;
+        this.pool = null;
+        this.poolSize = 0;
+        return released;
+    }
+
+    /**
+     * public void setRelaxedBalance(boolean enabled)
+     * <p>
+     * When enabled, insert and delete only link or unlink their node and return 0,
+     * the work of the repairs below is not counted.
+     * The nodes whose ranks may break the WAVL rules are marked dirty together with their ancestors,
+     * stopping at the first ancestor that is already dirty, and are repaired later by `rebalance`.
+     * Searches and sizes stay exact, but the tree may grow taller than a WAVL tree until it is repaired.
+     * The repair is bounded: once the updates since the last full repair reach the root rank + 1
+     * of that repair, the update repairs the whole tree itself. A WAVL tree has height <= rank <= 2log(n)
+     * and every relaxed insert adds at most 1 to the height, so the height stays below 4log(n) + 1
+     * (for n the size at the last repair) whether or not callers run `rebalance`.
+     * Join, split and the set operations repair their inputs first.
+     * Disabling the mode repairs the whole tree.
+     * <p>
+     * Complexity O(1) to enable, the cost of rebalance to disable.
+     * A relaxed update costs O(logn), plus O(log^2(n)) amortized for the forced repairs
+     */
+    public void setRelaxedBalance(boolean enabled) {
+        this.relaxed = enabled;
+        if (!enabled) {
+            rebalance(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * public boolean isRelaxedBalance()
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isRelaxedBalance() {
+        return this.relaxed;
+    }
+
+    /**
+     * public boolean isBalanced()
+     * <p>
+     * Returns true if no node waits for its ranks to be repaired
+     * <p>
+     * Complexity O(1)
+     */
+    public boolean isBalanced() {
+        return empty() || !this.getRoot().rankDirty;
+    }
+
+    /**
+     * public int rebalance(int maxSteps)
+     * <p>
+     * Repairs at most maxSteps dirty nodes, deepest first, and returns how many were repaired.
+     * A dirty node whose children are clean has two valid WAVL subtrees below it,
+     * so it is repaired by joining them again with the node as the pivot.
+     * Every step cleans one node and marks none, so the tree is valid WAVL after as many steps
+     * as there are dirty nodes. Callers may run it in small steps between updates,
+     * or from a maintenance thread that holds the same lock as the writers.
+     * <p>
+     * Complexity O(maxSteps * logn) plus the walk to the first dirty node
+     */
+    public int rebalance(int maxSteps) {
+        int steps = 0;
+        WAVLNode node = this.getRoot();
+        while (steps < maxSteps && node != null && node.rankDirty) {
+            if (node.getLeft().rankDirty) {
+                node = node.getLeft();
+            } else if (node.getRight().rankDirty) {
+                node = node.getRight();
+            } else {
+                node = repairRanks(node).getParent();
+                steps++;
+            }
+        }
+        if (isBalanced()) {
+            this.relaxedBudget = empty() ? 1 : this.getRoot().getRank() + 1;
+        }
+        return steps;
+    }
+
+    /**
+     * Rebuild the ranks of the subtree of the dirty `node`, whose children are clean
+     *
+     * @return The new root of the subtree
+     * <p>
+     * Complexity O(logn)
+     */
+    private WAVLNode repairRanks(WAVLNode node) {
+        WAVLNode parent = node.getParent();
+        boolean isLeftChild = parent != null && parent.getLeft() == node;
+        WAVLNode treeRoot = this.getRoot();
+
+        node.rankDirty = false;
+        WAVLNode subtree = joinNodes(node.getLeft(), node, node.getRight());
+        if (parent == null) {
+            setRoot(subtree);
+        } else {
+            this.root = treeRoot;
+            if (isLeftChild) {
+                parent.setLeft(subtree);
+            } else {
+                parent.setRight(subtree);
+            }
+            // Keep stale sizes upward closed, the join only marked the detached subtree
+            if (subtree.subTreeSize < 0) {
+                parent.invalidateSizeUp();
+            }
+        }
+        return subtree;
+    }
+
+    /**
+     * Mark `node` and its ancestors as dirty, stopping at the first dirty ancestor
+     * since all nodes above it are already dirty
+     * <p>
+     * Complexity W.C. O(height)
+     */
+    private static void markRanksDirty(WAVLNode node) {
+        while (node != null && !node.rankDirty) {
+            node.rankDirty = true;
+            node = node.getParent();
+        }
+    }
+
+    /**
+     * Mark the ranks of `node` and its ancestors dirty after a relaxed update,
+     * and repair the whole tree once the update budget of the last repair is spent
+     * <p>
+     * Complexity W.C. O(height), O(log^2(n)) amortized for the repairs
+     */
+    private void relaxedUpdate(WAVLNode node) {
+        markRanksDirty(node);
+        if (--this.relaxedBudget <= 0) {
+            rebalance(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Unlink `nodeToDelete` without touching ranks, in relaxed mode.
+     * A binary node is replaced by its successor, which is spliced out of its own place first.
+     * Unlike `replaceWithSuccessor` this does not assume the successor's child is a leaf,
+     * which only holds while the ranks are valid.
+     * <p>
+     * Complexity O(height)
+     */
+    private void unlinkRelaxed(WAVLNode nodeToDelete, WAVLNode successor) {
+        WAVLNode parent = nodeToDelete.getParent();
+        if (successor == null) {
+            WAVLNode child = nodeToDelete.getLeft() == EXTERNAL_NODE ? nodeToDelete.getRight() : nodeToDelete.getLeft();
+            if (parent == null) {
+                setRoot(child == EXTERNAL_NODE ? null : child);
+                return;
+            }
+            replaceUnaryNode(parent, nodeToDelete, child);
+            adjustSizesUp(parent, -1);
+            relaxedUpdate(parent);
+            return;
+        }
+
+        WAVLNode changed = successor;
+        if (successor.getParent() != nodeToDelete) {
+            changed = successor.getParent();
+            replaceUnaryNode(changed, successor, successor.getRight());
+            successor.setRight(nodeToDelete.getRight());
+        }
+        successor.setLeft(nodeToDelete.getLeft());
+        if (parent == null) {
+            setRoot(successor);
+        } else {
+            replaceUnaryNode(parent, nodeToDelete, successor);
+        }
+        successor.rank = nodeToDelete.getRank();
+        successor.subTreeSize = nodeToDelete.subTreeSize;
+        successor.rankDirty = nodeToDelete.rankDirty;
+        nodeToDelete.setLeft(EXTERNAL_NODE);
+        nodeToDelete.setRight(EXTERNAL_NODE);
+
+        adjustSizesUp(changed, -1);
+        relaxedUpdate(changed);
+    }
+
+    /**
+     * public Cursor cursor()
+     * <p>
+     * Returns a new unpositioned cursor over the items of the tree
+     * <p>
+     * Complexity O(1)
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * public IntStream keys()
+     * <p>
+     * Returns a stream of the keys in ascending order, call parallel() on it to split the work
+     * <p>
+     * Complexity O(1)
+     */
+    public IntStream keys() {
+        return StreamSupport.intStream(keySpliterator(), false);
+    }
+
+    /**
+     * public Stream<Map.Entry<Integer, String>> entries()
+     * <p>
+     * Returns a stream of the (key, info) items in ascending key order
+     * <p>
+     * Complexity O(1)
+     */
+    public Stream<Map.Entry<Integer, String>> entries() {
+        return StreamSupport.stream(entrySpliterator(), false);
+    }
+
+    /**
+     * public Spliterator.OfInt keySpliterator()
+     * <p>
+     * Returns a SIZED, SUBSIZED, ORDERED and SORTED spliterator of the keys.
+     * It splits by position in halves, using the subtree sizes to find where each half starts,
+     * and throws ConcurrentModificationException if the tree is modified while it is used.
+     * <p>
+     * Complexity O(1)
+     */
+    public Spliterator.OfInt keySpliterator() {
+        return new KeySpliterator(0, this.size(), this.modCount);
+    }
+
+    /**
+     * public Spliterator<Map.Entry<Integer, String>> entrySpliterator()
+     * <p>
+     * Like keySpliterator, over immutable (key, info) entries sorted by key
+     * <p>
+     * Complexity O(1)
+     */
+    public Spliterator<Map.Entry<Integer, String>> entrySpliterator() {
+        return new EntrySpliterator(0, this.size(), this.modCount);
+    }
+
     /**
      * public boolean empty()
      * <p>
@@ -57,7 +609,10 @@ public class WAVLTree {
             return null;
         }
 
-        WAVLNode closestNode = getClosestNode(k);
+        WAVLNode closestNode = findClosestNode(k);
+        if (this.fingerSearch) {
+            this.lastAccessed = closestNode;
+        }
         if (closestNode.getKey() == k) {
             return closestNode.getValue();
         } else {
@@ -78,32 +633,122 @@ public class WAVLTree {
      * Complexity Amortized O(1)
      */
     public int insert(int k, String i) {
+        return insertNear(findClosestNode(k), k, i);
+    }
+
+    /**
+     * Insert key k under `closestNode`, the result of a search for k
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private int insertNear(WAVLNode closestNode, int k, String i) {
         this.actionsCount.clear();
-        WAVLNode newNode = new WAVLNode(k, i);
 
-        if (empty()) {
+        if (closestNode == null) {
+            this.modCount++;
+            WAVLNode newNode = newNode(k, i);
             setRoot(newNode);
             this.maxNode = getRoot();
             this.minNode = getRoot();
+            this.lastAccessed = newNode;
             return 0;
         }
 
-        WAVLNode closestNode = getClosestNode(k);
         if (closestNode.getKey() == k) {
+            this.lastAccessed = closestNode;
             return -1;
-        } else if (closestNode.getKey() > k) {
+        }
+
+        this.modCount++;
+        WAVLNode newNode = newNode(k, i);
+        if (closestNode.getKey() > k) {
             closestNode.setLeft(newNode);
+            if (this.threaded) {
+                linkBetween(closestNode.prev, newNode, closestNode);
+            }
         } else {
             closestNode.setRight(newNode);
+            if (this.threaded) {
+                linkBetween(closestNode, newNode, closestNode.next);
+            }
         }
+        adjustSizesUp(closestNode, 1);
+        this.lastAccessed = newNode;
 
         setSpecialNodes(newNode);
+        if (this.relaxed) {
+            relaxedUpdate(closestNode);
+            return 0;
+        }
         insertBalanceTree(newNode);
-        newNode.updateSubTreeSizeUp();
 
         return this.actionsCount.getCount();
     }
 
+    /**
+     * public int appendMax(int k, String i)
+     * <p>
+     * Inserts an item whose key k is larger than every key in the tree,
+     * throws IllegalArgumentException otherwise. Returns the number of rebalancing operations.
+     * The new node is attached below the max node without a search, and the sizes on its path
+     * are marked stale rather than updated. Each append only marks the spine up to the previous append,
+     * and the sizes are recomputed once when a query needs them.
+     * <p>
+     * Complexity Amortized O(1)
+     */
+    public int appendMax(int k, String i) {
+        if (!empty() && k <= this.maxNode.getKey()) {
+            throw new IllegalArgumentException("Key " + k + " is not larger than the max key " + this.maxNode.getKey());
+        }
+
+        boolean lazySizes = this.deferSizes;
+        this.deferSizes = true;
+        try {
+            return insertNear(this.maxNode, k, i);
+        } finally {
+            this.deferSizes = lazySizes;
+        }
+    }
+
+    /**
+     * @return A node from the pool, or a new one if it is empty
+     * <p>
+     * Complexity O(1)
+     */
+    private WAVLNode newNode(int k, String i) {
+        if (this.pool == null) {
+            return new WAVLNode(k, i);
+        }
+
+        WAVLNode node = this.pool;
+        this.pool = node.right == EXTERNAL_NODE ? null : node.right;
+        this.poolSize--;
+        node.key = k;
+        node.value = i;
+        node.right = EXTERNAL_NODE;
+        return node;
+    }
+
+    /**
+     * Reset a deleted node and put it in the pool
+     * <p>
+     * Complexity O(1)
+     */
+    private void releaseNode(WAVLNode node) {
+        node.value = null;
+        node.rank = 0;
+        node.rankDirty = false;
+        node.subTreeSize = 1;
+        node.parent = null;
+        node.next = null;
+        node.prev = null;
+        node.left = EXTERNAL_NODE;
+        node.right = this.pool == null ? EXTERNAL_NODE : this.pool;
+        this.pool = node;
+        this.poolSize++;
+    }
+
     /**
      * Set the min and max nodes on insert
      * <p>
@@ -136,22 +781,70 @@ public class WAVLTree {
      */
     public int delete(int k) {
         actionsCount.clear();
-        WAVLNode nodeToDelete = getClosestNode(k);
+        WAVLNode nodeToDelete = findClosestNode(k);
 
         if (nodeToDelete == null || nodeToDelete.key != k) {
+            if (this.fingerSearch) {
+                this.lastAccessed = nodeToDelete;
+            }
             return -1;
         }
 
+        return deleteFound(nodeToDelete);
+    }
+
+    /**
+     * Delete `nodeToDelete`, which is in the tree, and recycle it if pooling is enabled
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private int deleteFound(WAVLNode nodeToDelete) {
+        int actions = removeNode(nodeToDelete);
+        if (this.pooling) {
+            releaseNode(nodeToDelete);
+        }
+        return actions;
+    }
+
+    /**
+     * Unlink `nodeToDelete` from the tree and rebalance
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private int removeNode(WAVLNode nodeToDelete) {
+        actionsCount.clear();
+        this.modCount++;
+
         if (nodeToDelete == this.maxNode) {
-            this.maxNode = nodeToDelete.getPredecessor();
+            this.maxNode = getPredecessor(nodeToDelete);
         }
         if (nodeToDelete == this.minNode) {
-            this.minNode = nodeToDelete.getSuccessor();
+            this.minNode = getSuccessor(nodeToDelete);
         }
 
         boolean notLeafOrUnary = !(nodeToDelete.isLeaf() || nodeToDelete.isUnary());
+        WAVLNode successor = null;
         if (notLeafOrUnary) {
-            replaceWithSuccessor(nodeToDelete);
+            successor = getSuccessor(nodeToDelete);
+            this.lastAccessed = successor;
+            if (!this.relaxed) {
+                replaceWithSuccessor(nodeToDelete, successor);
+            }
+        } else {
+            if (nodeToDelete.getParent() != null) {
+                this.lastAccessed = nodeToDelete.getParent();
+            } else {
+                this.lastAccessed = nodeToDelete.isLeaf() ? null : nodeToDelete.getLeft() == EXTERNAL_NODE ? nodeToDelete.getRight() : nodeToDelete.getLeft();
+            }
+        }
+        if (this.threaded) {
+            unlink(nodeToDelete);
+        }
+        if (this.relaxed) {
+            unlinkRelaxed(nodeToDelete, successor);
+            return 0;
         }
 
         if (nodeToDelete.isLeaf()) {
@@ -164,15 +857,15 @@ public class WAVLTree {
 
             if (parent.getRightRankDiff() == 1 && parent.getLeftRankDiff() == 1) {
                 removeLeaf(parent, nodeToDelete);
-                parent.updateSubTreeSizeUp();
+                adjustSizesUp(parent, -1);
                 return 0;
             }
 
             WAVLNode otherChild = getOtherChild(parent, nodeToDelete);
             if (otherChild == EXTERNAL_NODE) {
                 removeLeaf(parent, nodeToDelete);
-                parent.setRank(parent.getRank() - 1);
-                parent.calculateSize();
+                adjustSizesUp(parent, -1);
+                setRank(parent, parent.getRank() - 1);
 
                 deleteBalanceTree(parent.getParent());
 
@@ -180,6 +873,7 @@ public class WAVLTree {
             }
 
             removeLeaf(parent, nodeToDelete);
+            adjustSizesUp(parent, -1);
             deleteBalanceTree(parent);
 
             return actionsCount.getCount();
@@ -196,22 +890,21 @@ public class WAVLTree {
 
         if (parent.getRank() - nodeToDelete.getRank() == 1) {
             replaceUnaryNode(parent, nodeToDelete, child);
-            parent.updateSubTreeSizeUp();
+            adjustSizesUp(parent, -1);
             return 0;
         }
 
         replaceUnaryNode(parent, nodeToDelete, child);
+        adjustSizesUp(parent, -1);
         deleteBalanceTree(parent);
         return actionsCount.getCount();
 
     }
 
     /**
-     * Complexity O(logn) - calls `getSuccessor`
+     * Complexity O(1)
      */
-    private void replaceWithSuccessor(WAVLNode nodeToDelete) {
-        WAVLNode successor = nodeToDelete.getSuccessor();
-
+    private void replaceWithSuccessor(WAVLNode nodeToDelete, WAVLNode successor) {
         WAVLNode successorParent = successor.getParent();
         WAVLNode successorChild = successor.getRight() == EXTERNAL_NODE ? successor.getLeft() : successor.getRight();
         if (successor.isLeaf()) {
@@ -227,12 +920,18 @@ public class WAVLTree {
         }
 
         successor.rank = nodeToDelete.getRank();
+        successor.subTreeSize = nodeToDelete.subTreeSize;
+        nodeToDelete.subTreeSize = 1;
         successor.setRight(nodeToDelete.getRight());
         successor.setLeft(nodeToDelete.getLeft());
 
         if (successorChild != EXTERNAL_NODE) {
             replaceUnaryNode(successorChild, EXTERNAL_NODE, nodeToDelete);
             successorChild.rank = successorChild.getRank() + 1;
+            // Counts `nodeToDelete` until it is removed, deferred sizes are marked stale then instead
+            if (!this.deferSizes && successorChild.subTreeSize >= 0) {
+                successorChild.subTreeSize++;
+            }
         } else {
             if (successorParent == nodeToDelete) {
                 replaceUnaryNode(successor, EXTERNAL_NODE, nodeToDelete);
@@ -282,12 +981,463 @@ public class WAVLTree {
      * <p>
      * Complexity O(1)
      */
-    private WAVLNode getOtherChild(WAVLNode parent, WAVLNode node) {
-        if (parent.getRight() == node) {
-            return parent.getLeft();
-        } else {
-            return parent.getRight();
-        }
+    private WAVLNode getOtherChild(WAVLNode parent, WAVLNode node) {
+        if (parent.getRight() == node) {
+            return parent.getLeft();
+        } else {
+            return parent.getRight();
+        }
+    }
+
+    /**
+     * public int[] applyBatch(int[] keys, String[] infos, boolean[] deletes)
+     * <p>
+     * Applies a batch of operations: deletes[j] ? delete(keys[j]) : insert(keys[j], infos[j]).
+     * The operations are applied in key order (operations on the same key keep their batch order)
+     * in one sweep, every search starts from the node touched by the previous operation,
+     * and the subtree sizes of shared ancestors are recomputed once for the whole batch.
+     * Returns the result of each operation at its batch index:
+     * the number of rebalancing operations, or -1 as `insert` / `delete` would.
+     * <p>
+     * Complexity O(m log(m) + m log(n/m + 1)) for a batch of m operations
+     */
+    public int[] applyBatch(int[] keys, String[] infos, boolean[] deletes) {
+        if (keys.length != infos.length || keys.length != deletes.length) {
+            throw new IllegalArgumentException("Batch arrays differ in length");
+        }
+
+        // The low 32 bits keep the batch index, so equal keys stay in batch order
+        long[] order = new long[keys.length];
+        for (int j = 0; j < keys.length; j++) {
+            order[j] = ((long) keys[j] << 32) | j;
+        }
+        Arrays.sort(order);
+
+        int[] results = new int[keys.length];
+        boolean lazySizes = this.deferSizes;
+        this.deferSizes = true;
+        try {
+            WAVLNode finger = null;
+            for (long entry : order) {
+                int j = (int) entry;
+                WAVLNode closestNode = getClosestNodeFrom(finger, keys[j]);
+                if (deletes[j]) {
+                    if (closestNode == null || closestNode.getKey() != keys[j]) {
+                        results[j] = -1;
+                        continue;
+                    }
+                    results[j] = deleteFound(closestNode);
+                } else {
+                    results[j] = insertNear(closestNode, keys[j], infos[j]);
+                }
+                finger = this.lastAccessed;
+            }
+        } finally {
+            this.deferSizes = lazySizes;
+            if (!lazySizes) {
+                refreshSizes();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * public static WAVLTree join(WAVLTree left, int pivotKey, String pivotValue, WAVLTree right)
+     * <p>
+     * Returns a tree of all items of `left`, the item (pivotKey, pivotValue) and all items of `right`.
+     * All keys of `left` must be smaller than pivotKey and all keys of `right` larger,
+     * otherwise throws IllegalArgumentException.
+     * The nodes of `left` and `right` are moved to the new tree, so both are left empty.
+     * <p>
+     * Complexity O(logn)
+     */
+    public static WAVLTree join(WAVLTree left, int pivotKey, String pivotValue, WAVLTree right) {
+        if (left == right && !left.empty()) {
+            throw new IllegalArgumentException("Can not join a tree with itself");
+        }
+        if (!left.empty() && left.maxNode.getKey() >= pivotKey) {
+            throw new IllegalArgumentException("Left keys must be smaller than " + pivotKey);
+        }
+        if (!right.empty() && right.minNode.getKey() <= pivotKey) {
+            throw new IllegalArgumentException("Right keys must be larger than " + pivotKey);
+        }
+        left.rebalance(Integer.MAX_VALUE);
+        right.rebalance(Integer.MAX_VALUE);
+        left.refreshSizes();
+        right.refreshSizes();
+
+        WAVLTree tree = new WAVLTree();
+        WAVLNode pivot = new WAVLNode(pivotKey, pivotValue);
+        tree.setRoot(tree.joinNodes(left.rootOrExternal(), pivot, right.rootOrExternal()));
+        tree.minNode = left.empty() ? pivot : left.minNode;
+        tree.maxNode = right.empty() ? pivot : right.maxNode;
+
+        // The result is only threaded if every non empty input was
+        tree.threaded = (left.threaded || right.threaded)
+                && (left.threaded || left.empty()) && (right.threaded || right.empty());
+        if (tree.threaded) {
+            linkBetween(left.maxNode, pivot, right.minNode);
+        }
+
+        left.clear();
+        right.clear();
+        return tree;
+    }
+
+    /**
+     * public static WAVLTree join(WAVLTree left, WAVLTree right)
+     * <p>
+     * Concatenates two trees, all keys of `left` must be smaller than all keys of `right`,
+     * otherwise throws IllegalArgumentException.
+     * The nodes of `left` and `right` are moved to the new tree, so both are left empty.
+     * <p>
+     * Complexity O(logn)
+     */
+    public static WAVLTree join(WAVLTree left, WAVLTree right) {
+        if (right.empty() || left.empty()) {
+            left.rebalance(Integer.MAX_VALUE);
+            right.rebalance(Integer.MAX_VALUE);
+            left.refreshSizes();
+            right.refreshSizes();
+            WAVLTree tree = right.empty() ? left : right;
+            WAVLTree result = new WAVLTree();
+            result.setRoot(tree.getRoot());
+            result.minNode = tree.minNode;
+            result.maxNode = tree.maxNode;
+            result.threaded = tree.threaded;
+            tree.clear();
+            return result;
+        }
+
+        int pivotKey = right.minNode.getKey();
+        String pivotValue = right.minNode.getValue();
+        if (left.maxNode.getKey() >= pivotKey) {
+            throw new IllegalArgumentException("Left keys must be smaller than " + pivotKey);
+        }
+        right.delete(pivotKey);
+        return join(left, pivotKey, pivotValue, right);
+    }
+
+    /**
+     * public WAVLTree split(int k)
+     * <p>
+     * Splits the tree at key k: this tree keeps the items with keys smaller than k,
+     * the items with keys greater than or equal to k are moved to the returned tree.
+     * <p>
+     * Complexity O(logn)
+     */
+    public WAVLTree split(int k) {
+        WAVLTree larger = new WAVLTree();
+        larger.threaded = this.threaded;
+        larger.deferSizes = this.deferSizes;
+        larger.relaxed = this.relaxed;
+        if (empty()) {
+            return larger;
+        }
+        rebalance(Integer.MAX_VALUE);
+
+        WAVLNode[] parts = splitNodes(this.getRoot(), k);
+        WAVLNode largerRoot = parts[1] == null ? parts[2] : joinNodes(EXTERNAL_NODE, parts[1], parts[2]);
+
+        larger.setSubtree(largerRoot);
+        this.setSubtree(parts[0]);
+        if (this.threaded) {
+            if (this.maxNode != null) {
+                this.maxNode.next = null;
+            }
+            if (larger.minNode != null) {
+                larger.minNode.prev = null;
+            }
+        }
+        return larger;
+    }
+
+    /**
+     * public static WAVLTree union(WAVLTree first, WAVLTree second)
+     * <p>
+     * Returns a tree of all keys in `first` or `second`,
+     * the info of a key in both trees is taken from `first`.
+     * The nodes of both trees are moved to the new tree, so both are left empty.
+     * Independent halves run as fork/join tasks on the common pool.
+     * <p>
+     * Complexity O(m log(n/m + 1)) where m <= n are the sizes of the trees,
+     * plus O(size of the result) to relink it when an input is threaded
+     */
+    public static WAVLTree union(WAVLTree first, WAVLTree second) {
+        return setOperation(SetOperation.UNION, first, second);
+    }
+
+    /**
+     * public static WAVLTree intersection(WAVLTree first, WAVLTree second)
+     * <p>
+     * Returns a tree of the keys in both `first` and `second`, with their info from `first`.
+     * Both trees are left empty, nodes that are not in the result are dropped.
+     * Independent halves run as fork/join tasks on the common pool.
+     * <p>
+     * Complexity O(m log(n/m + 1)) where m <= n are the sizes of the trees,
+     * plus O(size of the result) to relink it when an input is threaded
+     */
+    public static WAVLTree intersection(WAVLTree first, WAVLTree second) {
+        return setOperation(SetOperation.INTERSECTION, first, second);
+    }
+
+    /**
+     * public static WAVLTree difference(WAVLTree first, WAVLTree second)
+     * <p>
+     * Returns a tree of the keys in `first` that are not in `second`.
+     * Both trees are left empty, nodes that are not in the result are dropped.
+     * Independent halves run as fork/join tasks on the common pool.
+     * <p>
+     * Complexity O(m log(n/m + 1)) where m <= n are the sizes of the trees,
+     * plus O(size of the result) to relink it when an input is threaded
+     */
+    public static WAVLTree difference(WAVLTree first, WAVLTree second) {
+        return setOperation(SetOperation.DIFFERENCE, first, second);
+    }
+
+    /**
+     * Complexity O(m log(n/m + 1)), plus O(size of the result) to relink it when an input was threaded
+     */
+    private static WAVLTree setOperation(SetOperation operation, WAVLTree first, WAVLTree second) {
+        if (first == second && !first.empty()) {
+            throw new IllegalArgumentException("Can not combine a tree with itself");
+        }
+        first.rebalance(Integer.MAX_VALUE);
+        second.rebalance(Integer.MAX_VALUE);
+        first.refreshSizes();
+        second.refreshSizes();
+
+        // The result is only threaded if every non empty input was, like join
+        boolean anyThreaded = first.threaded || second.threaded;
+        boolean threaded = anyThreaded
+                && (first.threaded || first.empty()) && (second.threaded || second.empty());
+
+        WAVLNode root = ForkJoinPool.commonPool().invoke(
+                new SetOperationTask(operation, first.rootOrExternal(), second.rootOrExternal()));
+        first.clear();
+        second.clear();
+
+        WAVLTree tree = new WAVLTree();
+        tree.setSubtree(root);
+        if (anyThreaded) {
+            // The tasks do not keep the links, rebuild them or clear them so no dropped node stays reachable
+            tree.relink(threaded);
+        }
+        return tree;
+    }
+
+    /**
+     * Split the subtree of `root` at key k
+     *
+     * @return The root of the keys smaller than k, the node with key k or null,
+     * and the root of the keys larger than k
+     * <p>
+     * Complexity O(logn)
+     */
+    private WAVLNode[] splitNodes(WAVLNode root, int k) {
+        // WAVL height <= rank, so the path from the root fits in rank + 1 slots
+        WAVLNode[] path = new WAVLNode[root.getRank() + 1];
+        int depth = 0;
+        WAVLNode node = root;
+        WAVLNode found = null;
+        WAVLNode smallerRoot = EXTERNAL_NODE;
+        WAVLNode largerRoot = EXTERNAL_NODE;
+        while (node != EXTERNAL_NODE) {
+            if (node.getKey() == k) {
+                found = node;
+                smallerRoot = node.getLeft();
+                largerRoot = node.getRight();
+                break;
+            }
+            path[depth++] = node;
+            node = k < node.getKey() ? node.getLeft() : node.getRight();
+        }
+
+        while (depth > 0) {
+            node = path[--depth];
+            if (k < node.getKey()) {
+                largerRoot = joinNodes(largerRoot, node, node.getRight());
+            } else {
+                smallerRoot = joinNodes(node.getLeft(), node, smallerRoot);
+            }
+        }
+
+        return new WAVLNode[]{smallerRoot, found, largerRoot};
+    }
+
+    /**
+     * Join the subtrees `left` and `right` without a pivot,
+     * the maximum of `left` is split off and used as the pivot
+     *
+     * @return The root of the joined subtree
+     * <p>
+     * Complexity O(logn)
+     */
+    private WAVLNode joinNodes(WAVLNode left, WAVLNode right) {
+        if (left == EXTERNAL_NODE) {
+            return right;
+        }
+        if (right == EXTERNAL_NODE) {
+            return left;
+        }
+
+        WAVLNode max = left;
+        while (max.getRight() != EXTERNAL_NODE) {
+            max = max.getRight();
+        }
+        WAVLNode[] parts = splitNodes(left, max.getKey());
+        return joinNodes(parts[0], max, right);
+    }
+
+    /**
+     * Join the subtrees `left` and `right` with `pivot` between them,
+     * using this tree's root as scratch while rebalancing.
+     *
+     * @return The root of the joined subtree
+     * <p>
+     * Complexity O(logn)
+     */
+    private WAVLNode joinNodes(WAVLNode left, WAVLNode pivot, WAVLNode right) {
+        detach(left);
+        detach(right);
+        pivot.setParent(null);
+
+        int rankDiff = left.getRank() - right.getRank();
+        if (Math.abs(rankDiff) <= 1) {
+            pivot.setLeft(left);
+            pivot.setRight(right);
+            pivot.rank = Math.max(left.getRank(), right.getRank()) + 1;
+            pivot.calculateSize();
+            return pivot;
+        }
+
+        // Walk down the inner spine of the taller tree to the first node
+        // whose rank is at most one above the shorter tree, and hang the pivot there
+        boolean leftTaller = rankDiff > 0;
+        WAVLNode taller = leftTaller ? left : right;
+        WAVLNode shorter = leftTaller ? right : left;
+        WAVLNode spineParent = null;
+        WAVLNode spine = taller;
+        while (spine.getRank() > shorter.getRank() + 1) {
+            spineParent = spine;
+            spine = leftTaller ? spine.getRight() : spine.getLeft();
+        }
+
+        if (leftTaller) {
+            pivot.setLeft(spine);
+            pivot.setRight(shorter);
+            spineParent.setRight(pivot);
+        } else {
+            pivot.setLeft(shorter);
+            pivot.setRight(spine);
+            spineParent.setLeft(pivot);
+        }
+        pivot.rank = Math.max(spine.getRank(), shorter.getRank()) + 1;
+        pivot.calculateSize();
+        adjustSizesUp(spineParent, shorter.getSubtreeSize() + 1);
+
+        // The pivot may now be a 0-child, which is exactly the state insert rebalancing repairs
+        this.root = taller;
+        insertBalanceTree(pivot);
+        return this.getRoot();
+    }
+
+    /**
+     * Make the subtree of `node` the whole tree, finding its min and max nodes
+     * <p>
+     * Complexity O(logn)
+     */
+    private void setSubtree(WAVLNode node) {
+        clear();
+        if (node == EXTERNAL_NODE) {
+            return;
+        }
+
+        setRoot(node);
+        WAVLNode min = node;
+        while (min.getLeft() != EXTERNAL_NODE) {
+            min = min.getLeft();
+        }
+        WAVLNode max = node;
+        while (max.getRight() != EXTERNAL_NODE) {
+            max = max.getRight();
+        }
+        this.minNode = min;
+        this.maxNode = max;
+    }
+
+    /**
+     * Thread `node` between `prev` and `next`, either may be null
+     * <p>
+     * Complexity O(1)
+     */
+    private static void linkBetween(WAVLNode prev, WAVLNode node, WAVLNode next) {
+        node.prev = prev;
+        node.next = next;
+        if (prev != null) {
+            prev.next = node;
+        }
+        if (next != null) {
+            next.prev = node;
+        }
+    }
+
+    /**
+     * Remove `node` from the threaded order
+     * <p>
+     * Complexity O(1)
+     */
+    private static void unlink(WAVLNode node) {
+        if (node.prev != null) {
+            node.prev.next = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+    }
+
+    /**
+     * Recompute the stale subtree sizes, afterwards no node is stale
+     * <p>
+     * Complexity O(number of stale nodes)
+     */
+    private void refreshSizes() {
+        if (!empty()) {
+            this.getRoot().refreshSize();
+        }
+    }
+
+    /**
+     * Make `node` a root, the shared external node is never written to
+     * <p>
+     * Complexity O(1)
+     */
+    private static void detach(WAVLNode node) {
+        if (node != EXTERNAL_NODE) {
+            node.setParent(null);
+        }
+    }
+
+    /**
+     * Complexity O(1)
+     */
+    private WAVLNode rootOrExternal() {
+        return empty() ? EXTERNAL_NODE : this.getRoot();
+    }
+
+    /**
+     * Empty the tree, its nodes are not touched
+     * <p>
+     * Complexity O(1)
+     */
+    private void clear() {
+        this.modCount++;
+        this.root = null;
+        this.minNode = null;
+        this.maxNode = null;
+        this.lastAccessed = null;
     }
 
     /**
@@ -325,16 +1475,13 @@ public class WAVLTree {
      * <p>
      * Returns a sorted array which contains all keys in the tree,
      * or an empty array if the tree is empty.
+     * Large trees are copied by parallel fork/join tasks.
      * <p>
      * Complexity O(n)
      */
     public int[] keysToArray() {
-        if (empty()) {
-            return new int[0];
-        }
-
         int[] arr = new int[this.size()];
-        inOrderKey(this.getRoot(), arr, 0);
+        exportEntries(arr, null);
         return arr;
     }
 
@@ -344,47 +1491,86 @@ public class WAVLTree {
      * Returns an array which contains all info in the tree,
      * sorted by their respective keys,
      * or an empty array if the tree is empty.
+     * Large trees are copied by parallel fork/join tasks.
      * <p>
      * Complexity O(n)
      */
     public String[] infoToArray() {
-        if (empty()) {
-            return new String[0];
-        }
-
         String[] arr = new String[this.size()];
-        inOrderInfo(this.getRoot(), arr, 0);
+        exportEntries(null, arr);
         return arr;
     }
 
     /**
+     * public int entriesToArrays(int[] keys, String[] values)
+     * <p>
+     * Copies the keys into `keys` and their info into `values` in one pass, sorted by key.
+     * Throws IllegalArgumentException if either array is shorter than size().
+     * Returns the number of items copied.
+     * Large trees are copied by parallel fork/join tasks.
+     * <p>
      * Complexity O(n)
      */
-    private int inOrderKey(WAVLNode node, int[] arr, int index) {
-        if (node.getLeft() != EXTERNAL_NODE) {
-            index = inOrderKey(node.getLeft(), arr, index);
-        }
-        arr[index] = node.getKey();
-        index++;
-        if (node.getRight() != EXTERNAL_NODE) {
-            index = inOrderKey(node.getRight(), arr, index);
+    public int entriesToArrays(int[] keys, String[] values) {
+        int size = this.size();
+        if (keys.length < size || values.length < size) {
+            throw new IllegalArgumentException("Arrays are shorter than the tree size " + size);
         }
-        return index;
+
+        exportEntries(keys, values);
+        return size;
     }
 
     /**
+     * Copy the keys and info in order into the arrays that are not null
+     * <p>
      * Complexity O(n)
      */
-    private int inOrderInfo(WAVLNode node, String[] arr, int index) {
-        if (node.getLeft() != EXTERNAL_NODE) {
-            index = inOrderInfo(node.getLeft(), arr, index);
+    private void exportEntries(int[] keys, String[] values) {
+        if (empty()) {
+            return;
         }
-        arr[index] = node.getValue();
-        index++;
-        if (node.getRight() != EXTERNAL_NODE) {
-            index = inOrderInfo(node.getRight(), arr, index);
+
+        // A tree waiting for rebalancing may be too deep to split into tasks
+        if (this.size() < ExportTask.SEQUENTIAL_CUTOFF || !isBalanced()) {
+            inOrderEntries(this.getRoot(), keys, values, 0);
+        } else {
+            ForkJoinPool.commonPool().invoke(new ExportTask(this.getRoot(), 0, keys, values));
+        }
+    }
+
+    /**
+     * Copy the subtree of `node` in order from `index`, using an explicit stack
+     * of the nodes whose left subtree is being copied. WAVL height <= rank, so rank + 1 slots suffice
+     * unless the ranks wait for rebalancing, then the stack grows.
+     * <p>
+     * Complexity O(n)
+     */
+    private static void inOrderEntries(WAVLNode node, int[] keys, String[] values, int index) {
+        WAVLNode[] stack = new WAVLNode[node.getRank() + 1];
+        int depth = 0;
+        while (true) {
+            while (node != EXTERNAL_NODE) {
+                if (depth == stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * depth);
+                }
+                stack[depth++] = node;
+                node = node.getLeft();
+            }
+            if (depth == 0) {
+                return;
+            }
+
+            node = stack[--depth];
+            if (keys != null) {
+                keys[index] = node.getKey();
+            }
+            if (values != null) {
+                values[index] = node.getValue();
+            }
+            index++;
+            node = node.getRight();
         }
-        return index;
     }
 
     /**
@@ -427,38 +1613,196 @@ public class WAVLTree {
         if (i < 0 || i > size()) {
             return null;
         }
+        return selectNode(i).getValue();
+    }
+
+    /**
+     * @return The node of the i'th smallest key, 1 <= i <= size()
+     * <p>
+     * Complexity W.C. O(log(i))
+     */
+    private WAVLNode selectNode(int i) {
         WAVLNode node;
         if (i <= this.getRoot().getLeft().getSubtreeSize()) {
             node = this.minNode;
             while (node.getSubtreeSize() < i) {
                 node = node.getParent();
             }
-            node = selectRec(node, i);
+            node = selectInSubtree(node, i);
         } else {
             node = this.maxNode;
             int treeSize = this.size();
             while (i <= treeSize - node.getSubtreeSize()) {
                 node = node.getParent();
             }
-            node = selectRec(node, i - (treeSize - node.getSubtreeSize()));
+            node = selectInSubtree(node, i - (treeSize - node.getSubtreeSize()));
 
         }
-        return node.getValue();
+        return node;
     }
 
     /**
+     * @return The node of the i'th smallest key in the subtree of `x`
+     * <p>
      * Complexity W.C. O(log(k)) whereas k is the size of `x` subtree
      */
-    private WAVLNode selectRec(WAVLNode x, int i) {
-        int r = x.getLeft().getSubtreeSize();
-        if (i - 1 == r) {
-            return x;
-        } else if (i - 1 < r) {
-            return selectRec(x.getLeft(), i);
+    private WAVLNode selectInSubtree(WAVLNode x, int i) {
+        while (true) {
+            int r = x.getLeft().getSubtreeSize();
+            if (i - 1 == r) {
+                return x;
+            } else if (i - 1 < r) {
+                x = x.getLeft();
+            } else {
+                i -= r + 1;
+                x = x.getRight();
+            }
+        }
+    }
+
+    /**
+     * public int rank(int k)
+     * <p>
+     * Returns the position of key k in sorted order, starting from 1,
+     * so that select(rank(k)) returns the info of k.
+     * Returns -1 if there is no such key in the tree.
+     * <p>
+     * Complexity W.C. O(log(min(r, n - r))) where r is the rank of k
+     */
+    public int rank(int k) {
+        if (empty()) {
+            return -1;
+        }
+
+        int index = indexOf(k);
+        return index >= 0 ? index + 1 : -1;
+    }
+
+    /**
+     * public int countLessThan(int k)
+     * <p>
+     * Returns the number of keys in the tree smaller than k
+     * <p>
+     * Complexity W.C. O(log(min(r, n - r))) where r is the result
+     */
+    public int countLessThan(int k) {
+        if (empty()) {
+            return 0;
+        }
+
+        int index = indexOf(k);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * public int countInRange(int lo, int hi)
+     * <p>
+     * Returns the number of keys k in the tree with lo <= k <= hi
+     * <p>
+     * Complexity O(logn)
+     */
+    public int countInRange(int lo, int hi) {
+        if (empty() || lo > hi) {
+            return 0;
+        }
+
+        int hiIndex = indexOf(hi);
+        int countUpToHi = hiIndex >= 0 ? hiIndex + 1 : -hiIndex - 1;
+        return countUpToHi - countLessThan(lo);
+    }
+
+    /**
+     * public int keysInRange(int lo, int hi, int[] out, int offset)
+     * <p>
+     * Copies the keys k in the tree with lo <= k <= hi, in ascending order, into `out` starting at `offset`,
+     * stopping when `out` is full. Returns the number of keys copied.
+     * To page through a large range call again with lo set to the last copied key + 1.
+     * <p>
+     * Complexity O(logn + m) where m is the number of keys copied
+     */
+    public int keysInRange(int lo, int hi, int[] out, int offset) {
+        if (offset < 0 || offset > out.length) {
+            throw new IndexOutOfBoundsException("Offset " + offset + " out of bounds for length " + out.length);
+        }
+
+        int index = offset;
+        WAVLNode node = lo > hi ? null : getCeilingNode(lo);
+        while (node != null && node.getKey() <= hi && index < out.length) {
+            out[index++] = node.getKey();
+            node = getSuccessor(node);
+        }
+        return index - offset;
+    }
+
+    /**
+     * public void forEachInRange(int lo, int hi, RangeVisitor visitor)
+     * <p>
+     * Calls the visitor on the items with lo <= key <= hi in ascending key order,
+     * until the range ends or the visitor returns false.
+     * The tree must not be modified by the visitor.
+     * <p>
+     * Complexity O(logn + m) where m is the number of items visited
+     */
+    public void forEachInRange(int lo, int hi, RangeVisitor visitor) {
+        WAVLNode node = lo > hi ? null : getCeilingNode(lo);
+        while (node != null && node.getKey() <= hi) {
+            if (!visitor.visit(node.getKey(), node.getValue())) {
+                return;
+            }
+            node = getSuccessor(node);
+        }
+    }
+
+    /**
+     * @return The node with the smallest key >= k, or null if there is none
+     * <p>
+     * Complexity O(logn)
+     */
+    private WAVLNode getCeilingNode(int k) {
+        WAVLNode node = getClosestNode(k);
+        if (node != null && node.getKey() < k) {
+            return getSuccessor(node);
+        }
+        return node;
+    }
+
+    /**
+     * Find the 0 based index of key k in the non empty tree, starting from the min or max node
+     * and climbing only until the subtree holds k and every key that is smaller than k
+     *
+     * @return The index of k, or (-(insertion point) - 1) if k is not in the tree
+     * <p>
+     * Complexity W.C. O(log(min(r, n - r)))
+     */
+    private int indexOf(int k) {
+        WAVLNode node;
+        int offset;
+        if (k <= this.getRoot().getKey()) {
+            node = this.minNode;
+            while (node.getParent() != null && node.getParent().getKey() <= k) {
+                node = node.getParent();
+            }
+            offset = 0;
         } else {
-            return selectRec(x.getRight(), i - r - 1);
+            node = this.maxNode;
+            while (node.getParent() != null && node.getParent().getKey() >= k) {
+                node = node.getParent();
+            }
+            offset = this.size() - node.getSubtreeSize();
         }
 
+        while (node != EXTERNAL_NODE) {
+            if (k == node.getKey()) {
+                return offset + node.getLeft().getSubtreeSize();
+            }
+            if (k < node.getKey()) {
+                node = node.getLeft();
+            } else {
+                offset += node.getLeft().getSubtreeSize() + 1;
+                node = node.getRight();
+            }
+        }
+        return -offset - 1;
     }
 
     /**
@@ -478,7 +1822,78 @@ public class WAVLTree {
             return maxNode;
         }
 
-        WAVLNode next = this.getRoot();
+        return descend(this.getRoot(), key);
+    }
+
+    /**
+     * @return The location of the node or the location it should be inserted in,
+     * using finger search if it is enabled
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private WAVLNode findClosestNode(int key) {
+        if (!this.fingerSearch || this.lastAccessed == null) {
+            return getClosestNode(key);
+        }
+
+        WAVLNode finger = this.lastAccessed;
+        long distance = Math.abs((long) key - finger.getKey());
+        if ((long) key - minNode.getKey() < distance) {
+            finger = minNode;
+            distance = (long) key - minNode.getKey();
+        }
+        if ((long) maxNode.getKey() - key < distance) {
+            finger = maxNode;
+        }
+        return getClosestNodeFrom(finger, key);
+    }
+
+    /**
+     * Finger search: climb from `finger` to the lowest ancestor whose subtree may hold `key`,
+     * then descend from it.
+     *
+     * @return The location of the node or the location it should be inserted in
+     * <p>
+     * Complexity W.C. O(log(d)) whereas d is the distance between `finger` and `key` in key order
+     */
+    private WAVLNode getClosestNodeFrom(WAVLNode finger, int key) {
+        if (empty()) {
+            return null;
+        }
+        if (finger == null || key <= minNode.getKey() || key >= maxNode.getKey()) {
+            return getClosestNode(key);
+        }
+
+        if (key == finger.getKey()) {
+            return finger;
+        }
+
+        // Every ancestor's subtree already holds the keys between `key` and the finger on one side,
+        // so climb until the other side is bounded by a parent on the far side of `key`
+        WAVLNode node = finger;
+        boolean goingRight = key > finger.getKey();
+        while (node.getParent() != null) {
+            WAVLNode parent = node.getParent();
+            if (parent.getKey() == key) {
+                return parent;
+            }
+            boolean bounded = goingRight ? (parent.getLeft() == node && key < parent.getKey())
+                    : (parent.getRight() == node && key > parent.getKey());
+            if (bounded) {
+                break;
+            }
+            node = parent;
+        }
+        return descend(node, key);
+    }
+
+    /**
+     * @return The location of the node or the location it should be inserted in,
+     * searching only the subtree of `next`
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private WAVLNode descend(WAVLNode next, int key) {
         while (true) {
             if (next.getKey() == key) {
                 return next;
@@ -505,31 +1920,32 @@ public class WAVLTree {
      * Complexity W.C. O(logn)
      */
     private void deleteBalanceTree(WAVLNode node) {
-        if (isLegalState(node)) {
-            if (node != null) {
-                node.updateSubTreeSizeUp();
+        // Demotions move the problem up to the parent, a rotation ends it
+        while (!isLegalState(node)) {
+            if (isSingleDemoteState(node)) {
+                setRank(node, node.getRank() - 1);
+                node = node.getParent();
+                continue;
             }
-            return;
-        }
-
-        if (isSingleDemoteState(node)) {
-            node.setRank(node.getRank() - 1);
-            node.calculateSize();
-            deleteBalanceTree(node.getParent());
-            return;
-        }
 
-        WAVLNode otherChild = node.getLeftRankDiff() == 3 ? node.getRight() : node.getLeft();
-        boolean isCase2 = otherChild.getRightRankDiff() == 2 && otherChild.getLeftRankDiff() == 2;
-        if (isCase2) {
-            otherChild.setRank(otherChild.getRank() - 1);
-            node.setRank(node.getRank() - 1);
-            deleteBalanceTree(node.getParent());
+            WAVLNode otherChild = node.getLeftRankDiff() == 3 ? node.getRight() : node.getLeft();
+            boolean isCase2 = otherChild.getRightRankDiff() == 2 && otherChild.getLeftRankDiff() == 2;
+            if (isCase2) {
+                setRank(otherChild, otherChild.getRank() - 1);
+                setRank(node, node.getRank() - 1);
+                node = node.getParent();
+                continue;
+            }
 
-            node.updateSubTreeSizeUp();
+            deleteRotate(node, otherChild);
             return;
         }
+    }
 
+    /**
+     * Complexity O(1)
+     */
+    private void deleteRotate(WAVLNode node, WAVLNode otherChild) {
         if (node.getRight() == otherChild) {
             boolean isCase4 = (otherChild.getRightRankDiff() == 2);
             if (isCase4) {
@@ -547,8 +1963,6 @@ public class WAVLTree {
                 deleteSingleRotate(node, otherChild);
             }
         }
-
-        node.updateSubTreeSizeUp();
     }
 
     /**
@@ -559,12 +1973,12 @@ public class WAVLTree {
     private void deleteSingleRotate(WAVLNode node, WAVLNode otherChild) {
         singleRotate(node, otherChild);
 
-        otherChild.setRank(otherChild.getRank() + 1);
+        setRank(otherChild, otherChild.getRank() + 1);
 
         if (node.isLeaf() && node.getRightRankDiff() == 3 && node.getLeftRankDiff() == 3) {
-            node.setRank(node.getRank() - 2);
+            setRank(node, node.getRank() - 2);
         } else {
-            node.setRank(node.getRank() - 1);
+            setRank(node, node.getRank() - 1);
         }
     }
 
@@ -575,9 +1989,9 @@ public class WAVLTree {
      */
     private void deleteDoubleRotate(WAVLNode node, WAVLNode otherChild) {
         WAVLNode grandChild = doubleRotate(node, otherChild);
-        node.setRank(node.getRank() - 2);
-        otherChild.setRank(otherChild.getRank() - 1);
-        grandChild.setRank(grandChild.getRank() + 2);
+        setRank(node, node.getRank() - 2);
+        setRank(otherChild, otherChild.getRank() - 1);
+        setRank(grandChild, grandChild.getRank() + 2);
     }
 
     /**
@@ -586,22 +2000,24 @@ public class WAVLTree {
      * Complexity W.C. O(logn)
      */
     private void insertBalanceTree(WAVLNode node) {
-        boolean isLegalInsertState = this.getRoot() == node || node.getRank() < node.getParent().getRank();
-        if (isLegalInsertState) {
-            node.updateSubTreeSizeUp();
-            return;
-        }
+        // Promotions move the problem up to the parent, a rotation ends it
+        while (true) {
+            boolean isLegalInsertState = this.getRoot() == node || node.getRank() < node.getParent().getRank();
+            if (isLegalInsertState) {
+                return;
+            }
 
-        WAVLNode parent = node.getParent();
+            WAVLNode parent = node.getParent();
 
-        boolean isPromoteState = Math.abs(parent.getRightRankDiff() - parent.getLeftRankDiff()) == 1;
-        if (isPromoteState) {
-            parent.setRank(parent.getRank() + 1);
-            insertBalanceTree(parent);
-            return;
-        }
+            boolean isPromoteState = Math.abs(parent.getRightRankDiff() - parent.getLeftRankDiff()) == 1;
+            if (!isPromoteState) {
+                insertRotate(parent, node);
+                return;
+            }
 
-        insertRotate(parent, node);
+            setRank(parent, parent.getRank() + 1);
+            node = parent;
+        }
     }
 
     /**
@@ -658,11 +2074,9 @@ public class WAVLTree {
     private void insertDoubleRotate(WAVLNode grandParent, WAVLNode parent) { // Case 3 insert
         WAVLNode child = doubleRotate(grandParent, parent);
 
-        child.setRank(child.getRank() + 1);
-        parent.setRank(parent.getRank() - 1);
-        grandParent.setRank(grandParent.getRank() - 1);
-
-        parent.updateSubTreeSizeUp();
+        setRank(child, child.getRank() + 1);
+        setRank(parent, parent.getRank() - 1);
+        setRank(grandParent, grandParent.getRank() - 1);
     }
 
     /**
@@ -672,9 +2086,7 @@ public class WAVLTree {
      */
     private void insertSingleRotate(WAVLNode parent, WAVLNode node) {
         singleRotate(parent, node);
-        parent.setRank(parent.getRank() - 1);
-
-        node.updateSubTreeSizeUp();
+        setRank(parent, parent.getRank() - 1);
     }
 
     /**
@@ -724,31 +2136,136 @@ public class WAVLTree {
      * <p>
      * Complexity O(1)
      */
-    private WAVLNode doubleRotate(WAVLNode grandParent, WAVLNode parent) {
-        if (grandParent.getRight() == parent) {
-            WAVLNode child = parent.getLeft();
-            singleRotate(parent, child);
-            singleRotate(grandParent, grandParent.getRight());
-            return child;
-        } else {
-            WAVLNode child = parent.getRight();
-            singleRotate(parent, child);
-            singleRotate(grandParent, grandParent.getLeft());
-            return child;
+    private WAVLNode doubleRotate(WAVLNode grandParent, WAVLNode parent) {
+        if (grandParent.getRight() == parent) {
+            WAVLNode child = parent.getLeft();
+            singleRotate(parent, child);
+            singleRotate(grandParent, grandParent.getRight());
+            return child;
+        } else {
+            WAVLNode child = parent.getRight();
+            singleRotate(parent, child);
+            singleRotate(grandParent, grandParent.getLeft());
+            return child;
+        }
+    }
+
+    /**
+     * @return The successor of the node
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private WAVLNode getSuccessor(WAVLNode node) {
+        if (this.threaded) {
+            return node.next;
+        }
+        if (maxNode == node) {
+            return null;
+        }
+
+        if (node.getRight() != EXTERNAL_NODE) {
+            node = node.getRight();
+            while (node.getLeft() != EXTERNAL_NODE) {
+                node = node.getLeft();
+            }
+        } else {
+            while (node.getParent() != null && node.getParent().getRight() == node) {
+                node = node.getParent();
+            }
+
+            if (node.getParent() == null) {
+                return null;
+            } else {
+                node = node.getParent();
+            }
+        }
+        return node;
+    }
+
+
+    /**
+     * @return The predecessor of the node
+     * <p>
+     * Complexity W.C. O(logn)
+     * Complexity Amortized O(1)
+     */
+    private WAVLNode getPredecessor(WAVLNode node) {
+        if (this.threaded) {
+            return node.prev;
+        }
+        if (minNode == node) {
+            return null;
+        }
+
+        if (node.getLeft() != EXTERNAL_NODE) {
+            node = node.getLeft();
+            while (node.getRight() != EXTERNAL_NODE) {
+                node = node.getRight();
+            }
+        } else {
+            while (node.getParent() != null && node.getParent().getLeft() == node) {
+                node = node.getParent();
+            }
+
+            if (node.getParent() == null) {
+                return null;
+            } else {
+                node = node.getParent();
+            }
+        }
+
+        return node;
+    }
+
+    /**
+     * Set the rank of `node`, counted as a rebalancing operation
+     * <p>
+     * Complexity O(1)
+     */
+    private void setRank(WAVLNode node, int rank) {
+        node.rank = rank;
+        actionsCount.addAction();
+    }
+
+    /**
+     * Add `delta` to the subtree sizes from `node` to the root in a single pass,
+     * rotations only recompute the sizes of the rotated nodes on top of this.
+     * Stops at the first stale size, since all sizes above it are stale as well.
+     * While sizes are deferred the path is marked stale instead.
+     * <p>
+     * Complexity W.C. O(logn)
+     */
+    private void adjustSizesUp(WAVLNode node, int delta) {
+        if (this.deferSizes) {
+            node.invalidateSizeUp();
+            return;
+        }
+        for (; node != null && node.subTreeSize >= 0; node = node.getParent()) {
+            node.subTreeSize += delta;
         }
     }
 
     /**
      * public class WAVLNode
      */
-    public class WAVLNode {
+    public static class WAVLNode {
         private int key;
         private int rank;
         private int subTreeSize;
+        /**
+         * Set in relaxed balance mode when the ranks in this subtree may break the WAVL rules
+         */
+        private boolean rankDirty;
         private String value;
         private WAVLNode left;
         private WAVLNode right;
         private WAVLNode parent;
+        /**
+         * In-order neighbours, only kept up to date while the tree is threaded
+         */
+        private WAVLNode next;
+        private WAVLNode prev;
 
         public WAVLNode(int key, String value) {
             this.key = key;
@@ -762,24 +2279,20 @@ public class WAVLTree {
 
         public void setParent(WAVLNode parent) {
             this.parent = parent;
-            if (parent == null) {
-                root = this;
-            }
         }
 
         public void setRight(WAVLNode right) {
             this.right = right;
-            right.setParent(this);
+            if (right != EXTERNAL_NODE) {
+                right.setParent(this);
+            }
         }
 
         public void setLeft(WAVLNode left) {
             this.left = left;
-            left.setParent(this);
-        }
-
-        public void setRank(int rank) {
-            this.rank = rank;
-            actionsCount.addAction();
+            if (left != EXTERNAL_NODE) {
+                left.setParent(this);
+            }
         }
 
         public int getRank() {
@@ -818,7 +2331,13 @@ public class WAVLTree {
             return this != EXTERNAL_NODE;
         }
 
+        /**
+         * Recomputes the size first if it is stale
+         */
         public int getSubtreeSize() {
+            if (this.subTreeSize < 0) {
+                refreshSize();
+            }
             return this.subTreeSize;
         }
 
@@ -832,93 +2351,526 @@ public class WAVLTree {
 
 
         /**
-         * @return The successor of the node
+         * Calculate the subtree size using the node's children
+         * <p>
+         * Complexity O(1)
+         */
+        private void calculateSize() {
+            if (this != EXTERNAL_NODE) {
+                int rightSize = this.getRight().subTreeSize;
+                int leftSize = this.getLeft().subTreeSize;
+                this.subTreeSize = rightSize < 0 || leftSize < 0 ? -1 : rightSize + leftSize + 1;
+            }
+        }
+
+        /**
+         * Mark the size of this node and its ancestors as stale (-1),
+         * stopping at the first stale ancestor since all nodes above it are already stale
          * <p>
          * Complexity W.C. O(logn)
-         * Complexity Amortized O(1)
          */
-        private WAVLNode getSuccessor() {
-            WAVLNode node = this;
-            if (maxNode == node) {
-                return null;
+        private void invalidateSizeUp() {
+            WAVLNode next = this;
+            while (next != null && next.subTreeSize >= 0) {
+                next.subTreeSize = -1;
+                next = next.getParent();
             }
+        }
 
-            if (node.getRight() != EXTERNAL_NODE) {
-                node = node.getRight();
-                while (node.getLeft() != EXTERNAL_NODE) {
-                    node = node.getLeft();
-                }
-            } else {
-                while (node.getParent() != null && node.getParent().getRight() == node) {
-                    node = node.getParent();
-                }
+        /**
+         * Recompute the stale sizes in the subtree of this node in post-order, using an explicit stack
+         * of the stale nodes whose children are being refreshed. Stale sizes are upward closed,
+         * so only stale children are visited. The stack starts at rank + 1 slots and grows
+         * when the ranks wait for rebalancing.
+         * <p>
+         * Complexity O(number of stale nodes)
+         */
+        private int refreshSize() {
+            if (this.subTreeSize >= 0) {
+                return this.subTreeSize;
+            }
 
-                if (node.getParent() == null) {
-                    return null;
+            WAVLNode[] stack = new WAVLNode[this.rank + 1];
+            int depth = 0;
+            stack[depth++] = this;
+            while (depth > 0) {
+                WAVLNode node = stack[depth - 1];
+                WAVLNode child = node.getLeft().subTreeSize < 0 ? node.getLeft()
+                        : node.getRight().subTreeSize < 0 ? node.getRight() : null;
+                if (child == null) {
+                    node.subTreeSize = node.getLeft().subTreeSize + node.getRight().subTreeSize + 1;
+                    depth--;
                 } else {
-                    node = node.getParent();
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, 2 * depth);
+                    }
+                    stack[depth++] = child;
                 }
             }
-            return node;
+            return this.subTreeSize;
         }
 
-
         /**
-         * @return The predecessor of this node
+         * Call `calculateSize` from this node to the root
          * <p>
          * Complexity W.C. O(logn)
-         * Complexity Amortized O(1)
          */
-        private WAVLNode getPredecessor() {
-            WAVLNode node = this;
-            if (minNode == node) {
-                return null;
+        public void updateSubTreeSizeUp() {
+            WAVLNode next = this;
+            while (next != null) {
+                next.calculateSize();
+                next = next.getParent();
             }
+        }
 
-            if (node.getLeft() != EXTERNAL_NODE) {
-                node = node.getLeft();
-                while (node.getRight() != EXTERNAL_NODE) {
-                    node = node.getRight();
+    }
+
+    /**
+     * public interface RangeVisitor
+     * <p>
+     * Receives the items of a range query, returning false stops the walk
+     */
+    public interface RangeVisitor {
+        boolean visit(int key, String info);
+    }
+
+    private enum SetOperation {
+        UNION, INTERSECTION, DIFFERENCE
+    }
+
+    /**
+     * Fork/join task combining two detached subtrees, each task uses its own
+     * scratch tree for joins so tasks only ever touch their own nodes
+     */
+    private static class SetOperationTask extends RecursiveTask<WAVLNode> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Below this many nodes in both subtrees together the task runs sequentially
+         */
+        private static final int SEQUENTIAL_CUTOFF = 1 << 12;
+
+        private final SetOperation operation;
+        private final WAVLNode first;
+        private final WAVLNode second;
+
+        private SetOperationTask(SetOperation operation, WAVLNode first, WAVLNode second) {
+            this.operation = operation;
+            this.first = first;
+            this.second = second;
+        }
+
+        /**
+         * Complexity O(m log(n/m + 1))
+         */
+        @Override
+        protected WAVLNode compute() {
+            if (first == EXTERNAL_NODE || second == EXTERNAL_NODE) {
+                if (operation == SetOperation.UNION) {
+                    return first == EXTERNAL_NODE ? second : first;
                 }
+                return operation == SetOperation.DIFFERENCE ? first : EXTERNAL_NODE;
+            }
+
+            boolean sequential = first.getSubtreeSize() + second.getSubtreeSize() < SEQUENTIAL_CUTOFF;
+
+            // Difference splits the tree it keeps by the root of the one it removes
+            WAVLTree workspace = new WAVLTree();
+            WAVLNode pivot = operation == SetOperation.DIFFERENCE ? second : first;
+            WAVLNode other = operation == SetOperation.DIFFERENCE ? first : second;
+            WAVLNode pivotLeft = pivot.getLeft();
+            WAVLNode pivotRight = pivot.getRight();
+            WAVLNode[] parts = workspace.splitNodes(other, pivot.getKey());
+
+            SetOperationTask leftTask;
+            SetOperationTask rightTask;
+            if (operation == SetOperation.DIFFERENCE) {
+                leftTask = new SetOperationTask(operation, parts[0], pivotLeft);
+                rightTask = new SetOperationTask(operation, parts[2], pivotRight);
             } else {
-                while (node.getParent() != null && node.getParent().getLeft() == node) {
-                    node = node.getParent();
-                }
+                leftTask = new SetOperationTask(operation, pivotLeft, parts[0]);
+                rightTask = new SetOperationTask(operation, pivotRight, parts[2]);
+            }
 
-                if (node.getParent() == null) {
-                    return null;
-                } else {
-                    node = node.getParent();
-                }
+            WAVLNode left;
+            WAVLNode right;
+            if (sequential) {
+                left = leftTask.compute();
+                right = rightTask.compute();
+            } else {
+                rightTask.fork();
+                left = leftTask.compute();
+                right = rightTask.join();
             }
 
-            return node;
+            boolean keepPivot = operation == SetOperation.UNION
+                    || (operation == SetOperation.INTERSECTION && parts[1] != null);
+            return keepPivot ? workspace.joinNodes(left, pivot, right) : workspace.joinNodes(left, right);
+        }
+    }
+
+    /**
+     * public class Cursor
+     * <p>
+     * A reusable position in the tree that moves in both directions in key order.
+     * Stepping allocates nothing and follows successor/predecessor links, so a full walk costs O(n).
+     * After an insert, delete, join or split of the tree the cursor throws
+     * ConcurrentModificationException until it seeks again.
+     */
+    public class Cursor {
+        private WAVLNode node;
+        private int expectedModCount;
+
+        private Cursor() {
+            this.expectedModCount = modCount;
         }
 
         /**
-         * Calculate the subtree size using the node's children
+         * public boolean seek(int k)
+         * <p>
+         * Moves to the item with the smallest key >= k, returns false if there is none
+         * <p>
+         * Complexity O(logn)
+         */
+        public boolean seek(int k) {
+            return moveTo(getCeilingNode(k));
+        }
+
+        /**
+         * public boolean seekFloor(int k)
+         * <p>
+         * Moves to the item with the largest key <= k, returns false if there is none
+         * <p>
+         * Complexity O(logn)
+         */
+        public boolean seekFloor(int k) {
+            WAVLNode closest = getClosestNode(k);
+            if (closest != null && closest.getKey() > k) {
+                closest = getPredecessor(closest);
+            }
+            return moveTo(closest);
+        }
+
+        /**
+         * public boolean seekFirst()
+         * <p>
+         * Moves to the item with the minimal key, returns false if the tree is empty
          * <p>
          * Complexity O(1)
          */
-        private void calculateSize() {
-            if (this != EXTERNAL_NODE) {
-                this.subTreeSize = this.getRight().getSubtreeSize() + this.getLeft().getSubtreeSize() + 1;
+        public boolean seekFirst() {
+            return moveTo(minNode);
+        }
+
+        /**
+         * public boolean seekLast()
+         * <p>
+         * Moves to the item with the maximal key, returns false if the tree is empty
+         * <p>
+         * Complexity O(1)
+         */
+        public boolean seekLast() {
+            return moveTo(maxNode);
+        }
+
+        /**
+         * public boolean next()
+         * <p>
+         * Moves to the next item in ascending key order, returns false when moving past the maximum
+         * <p>
+         * Complexity W.C. O(logn)
+         * Complexity Amortized O(1)
+         */
+        public boolean next() {
+            checkPositioned();
+            this.node = getSuccessor(this.node);
+            return this.node != null;
+        }
+
+        /**
+         * public boolean prev()
+         * <p>
+         * Moves to the previous item in ascending key order, returns false when moving past the minimum
+         * <p>
+         * Complexity W.C. O(logn)
+         * Complexity Amortized O(1)
+         */
+        public boolean prev() {
+            checkPositioned();
+            this.node = getPredecessor(this.node);
+            return this.node != null;
+        }
+
+        /**
+         * public boolean isValid()
+         * <p>
+         * Returns true if the cursor is on an item
+         * <p>
+         * Complexity O(1)
+         */
+        public boolean isValid() {
+            return this.node != null && this.expectedModCount == modCount;
+        }
+
+        /**
+         * public int key()
+         * <p>
+         * Complexity O(1)
+         */
+        public int key() {
+            checkPositioned();
+            return this.node.getKey();
+        }
+
+        /**
+         * public String value()
+         * <p>
+         * Complexity O(1)
+         */
+        public String value() {
+            checkPositioned();
+            return this.node.getValue();
+        }
+
+        /**
+         * Complexity O(1)
+         */
+        private boolean moveTo(WAVLNode node) {
+            this.node = node;
+            this.expectedModCount = modCount;
+            return node != null;
+        }
+
+        /**
+         * Complexity O(1)
+         */
+        private void checkPositioned() {
+            if (this.expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.node == null) {
+                throw new NoSuchElementException();
             }
         }
+    }
+
+    /**
+     * Spliterator over the items at positions [from, to) in key order.
+     * The first node is found with select when it is first needed, after that it walks successors.
+     */
+    private abstract class TreeSpliterator {
+        protected int from;
+        protected final int to;
+        protected final int expectedModCount;
+        private WAVLNode node;
+
+        protected TreeSpliterator(int from, int to, int expectedModCount) {
+            this.from = from;
+            this.to = to;
+            this.expectedModCount = expectedModCount;
+        }
 
         /**
-         * Call `calculateSize` from this node to the root
+         * @return The position where the second half starts, this spliterator keeps it,
+         * or -1 if it is too small to split
+         * <p>
+         * Complexity O(1)
+         */
+        protected int splitPosition() {
+            int middle = (this.from + this.to) >>> 1;
+            if (middle <= this.from) {
+                return -1;
+            }
+            int first = this.from;
+            this.from = middle;
+            this.node = null;
+            return first;
+        }
+
+        /**
+         * @return The next node, or null if the spliterator is exhausted
          * <p>
          * Complexity W.C. O(logn)
+         * Complexity Amortized O(1)
          */
-        public void updateSubTreeSizeUp() {
-            WAVLNode next = this;
-            while (next != null) {
-                next.calculateSize();
-                next = next.getParent();
+        protected WAVLNode nextNode() {
+            if (modCount != this.expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (this.from >= this.to) {
+                return null;
+            }
+            this.node = this.node == null ? selectNode(this.from + 1) : getSuccessor(this.node);
+            this.from++;
+            return this.node;
+        }
+
+        public long estimateSize() {
+            return this.to - this.from;
+        }
+
+        public int characteristics() {
+            return Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED
+                    | Spliterator.SORTED | Spliterator.NONNULL;
+        }
+    }
+
+    private class KeySpliterator extends TreeSpliterator implements Spliterator.OfInt {
+
+        private KeySpliterator(int from, int to, int expectedModCount) {
+            super(from, to, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(IntConsumer action) {
+            WAVLNode next = nextNode();
+            if (next == null) {
+                return false;
+            }
+            action.accept(next.getKey());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(IntConsumer action) {
+            for (WAVLNode next = nextNode(); next != null; next = nextNode()) {
+                action.accept(next.getKey());
+            }
+        }
+
+        @Override
+        public Spliterator.OfInt trySplit() {
+            int first = splitPosition();
+            return first < 0 ? null : new KeySpliterator(first, this.from, this.expectedModCount);
+        }
+
+        @Override
+        public Comparator<? super Integer> getComparator() {
+            return null;
+        }
+    }
+
+    private class EntrySpliterator extends TreeSpliterator implements Spliterator<Map.Entry<Integer, String>> {
+
+        private EntrySpliterator(int from, int to, int expectedModCount) {
+            super(from, to, expectedModCount);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<Integer, String>> action) {
+            WAVLNode next = nextNode();
+            if (next == null) {
+                return false;
+            }
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(next.getKey(), next.getValue()));
+            return true;
+        }
+
+        @Override
+        public Spliterator<Map.Entry<Integer, String>> trySplit() {
+            int first = splitPosition();
+            return first < 0 ? null : new EntrySpliterator(first, this.from, this.expectedModCount);
+        }
+
+        @Override
+        public Comparator<? super Map.Entry<Integer, String>> getComparator() {
+            return Map.Entry.comparingByKey();
+        }
+    }
+
+    /**
+     * Fork/join task building the balanced subtree of keys[from..to] like buildBalanced,
+     * with the two halves built in parallel
+     */
+    private static class BuildTask extends RecursiveTask<WAVLNode> {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Below this many keys a subtree is built sequentially
+         */
+        private static final int SEQUENTIAL_CUTOFF = 1 << 13;
+
+        private final int[] keys;
+        private final String[] values;
+        private final int from;
+        private final int to;
+
+        private BuildTask(int[] keys, String[] values, int from, int to) {
+            this.keys = keys;
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        /**
+         * Complexity O(to - from)
+         */
+        @Override
+        protected WAVLNode compute() {
+            if (to - from < SEQUENTIAL_CUTOFF) {
+                return buildBalanced(keys, values, from, to);
             }
+
+            int middle = (from + to) >>> 1;
+            BuildTask rightTask = new BuildTask(keys, values, middle + 1, to);
+            rightTask.fork();
+            WAVLNode node = new WAVLNode(keys[middle], values[middle]);
+            node.left = new BuildTask(keys, values, from, middle - 1).compute();
+            node.right = rightTask.join();
+            node.left.parent = node;
+            node.right.parent = node;
+            node.rank = Math.max(node.left.rank, node.right.rank) + 1;
+            node.subTreeSize = to - from + 1;
+            return node;
+        }
+    }
+
+    /**
+     * Fork/join task copying a subtree into the export arrays,
+     * the subtree sizes give every subtree its offset up front so the halves are independent
+     */
+    private static class ExportTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Below this many nodes a subtree is copied sequentially
+         */
+        private static final int SEQUENTIAL_CUTOFF = 1 << 13;
+
+        private final WAVLNode node;
+        private final int offset;
+        private final int[] keys;
+        private final String[] values;
+
+        private ExportTask(WAVLNode node, int offset, int[] keys, String[] values) {
+            this.node = node;
+            this.offset = offset;
+            this.keys = keys;
+            this.values = values;
         }
 
+        /**
+         * Complexity O(n)
+         */
+        @Override
+        protected void compute() {
+            if (node.getSubtreeSize() < SEQUENTIAL_CUTOFF) {
+                inOrderEntries(node, keys, values, offset);
+                return;
+            }
+
+            int index = offset + node.getLeft().getSubtreeSize();
+            ExportTask right = new ExportTask(node.getRight(), index + 1, keys, values);
+            right.fork();
+            new ExportTask(node.getLeft(), offset, keys, values).compute();
+            if (keys != null) {
+                keys[index] = node.getKey();
+            }
+            if (values != null) {
+                values[index] = node.getValue();
+            }
+            right.join();
+        }
     }
 
     /**